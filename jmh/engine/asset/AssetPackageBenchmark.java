@@ -0,0 +1,73 @@
+package engine.asset;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetPackageBenchmark {
+
+    @Param({"100"})
+    public int assetCount;
+
+    //Bytes per asset, every fourth asset is a square RGBA texture of roughly this size
+    @Param({"65536"})
+    public int assetSize;
+
+    private AssetPackage assetPackage;
+    private Path packagePath, scratchPath;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        HashMap<String, Asset> assetMap = new HashMap<>();
+        assetPackage = new AssetPackage("bench", assetMap);
+
+        for (int i = 0; i < assetCount; i++) {
+            //Half random, half zeros, so compression has something to do without being trivial
+            byte[] bytes = new byte[assetSize];
+            for (int b = 0; b < bytes.length / 2; b++) {
+                bytes[b] = (byte) random.nextInt();
+            }
+
+            String path = "assets/asset" + i;
+            if(i % 4 == 0) {
+                int side = (int) Math.sqrt(assetSize / 4.0);
+                assetMap.put(path, new Asset<>(assetPackage, path, new TextureData(bytes, side, side)));
+            }
+            else {
+                assetMap.put(path, new Asset<>(assetPackage, path, bytes));
+            }
+        }
+
+        packagePath = Files.createTempFile("bench", ".pkg");
+        scratchPath = Files.createTempFile("bench-scratch", ".pkg");
+        AssetPackage.createPackage(packagePath, assetPackage);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(packagePath);
+        Files.deleteIfExists(scratchPath);
+    }
+
+    @Benchmark
+    public void createPackage() {
+        AssetPackage.createPackage(scratchPath, assetPackage);
+    }
+
+    @Benchmark
+    public AssetPackage openPackage() {
+        return AssetPackage.openPackage("bench", packagePath);
+    }
+}
@@ -0,0 +1,51 @@
+package engine.ecs;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActorTraversalBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int actorCount;
+
+    //Children per Actor, 1 builds a single chain as deep as actorCount
+    @Param({"4"})
+    public int fanout;
+
+    private Actor root;
+
+    @Setup
+    public void setup() {
+        Scene scene = new Scene(null, "Benchmark");
+        root = scene.newRootActor("Root");
+        scene.setRootActor(root);
+
+        Actor[] actors = new Actor[actorCount];
+        actors[0] = root;
+
+        for (int i = 1; i < actorCount; i++) {
+            actors[i] = scene.newActor("Actor" + i);
+            if(i % 2 == 0) actors[i].add(new TransformComponent(new Matrix4f()));
+            actors[(i - 1) / fanout].addActor(actors[i]);
+        }
+    }
+
+    @Benchmark
+    public void previsitAllActors(Blackhole blackhole) {
+        root.previsitAllActors(blackhole::consume);
+    }
+
+    @Benchmark
+    public void postvisitAllActors(Blackhole blackhole) {
+        root.postvisitAllActors(blackhole::consume);
+    }
+}
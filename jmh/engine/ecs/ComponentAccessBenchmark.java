@@ -0,0 +1,66 @@
+package engine.ecs;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentAccessBenchmark {
+
+    @Param({"1000", "100000"})
+    public int actorCount;
+
+    private Actor[] actors;
+    private Query transforms;
+
+    @Setup
+    public void setup() {
+        Scene scene = new Scene(null, "Benchmark");
+        Actor root = scene.newRootActor("Root");
+        scene.setRootActor(root);
+
+        //Spread the Actors over a few Archetypes so lookups aren't all hitting the same columns
+        actors = new Actor[actorCount];
+        for (int i = 0; i < actorCount; i++) {
+            actors[i] = scene.newActor("Actor" + i, new TransformComponent(new Matrix4f()));
+            if(i % 2 == 0) actors[i].add(new BoundsComponent(new Vector3f(-1), new Vector3f(1)));
+            if(i % 3 == 0) actors[i].add(new ScriptComponent(null));
+            root.addActor(actors[i]);
+        }
+
+        transforms = scene.query(TransformComponent.class);
+    }
+
+    @Benchmark
+    public void getComponent(Blackhole blackhole) {
+        for(Actor actor : actors) {
+            blackhole.consume(actor.getComponent(TransformComponent.class));
+        }
+    }
+
+    @Benchmark
+    public void getComponentMissing(Blackhole blackhole) {
+        for(Actor actor : actors) {
+            blackhole.consume(actor.getComponent(SpotlightComponent.class));
+        }
+    }
+
+    //Same work through a Query, for comparison with per-Actor lookups
+    @Benchmark
+    public void queryColumns(Blackhole blackhole) {
+        for(Archetype archetype : transforms.getArchetypes()) {
+            Object[] column = archetype.getColumn(TransformComponent.class);
+            for (int row = 0; row < archetype.size(); row++) {
+                blackhole.consume(column[row]);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package engine.gameui;
+
+import engine.graphics.Color;
+import engine.graphics.Sampler;
+import engine.graphics.Texture;
+import engine.graphics.text.MsdfFont;
+import engine.graphics.text.MsdfJsonLoader;
+import engine.graphics.text.TextEffect;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static engine.gameui.TextValue.text;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopUpdateBenchmark {
+
+    @Param({"10", "1000"})
+    public int widgetCount;
+
+    private Loop loop;
+    private HeadlessGfxPlatform gfxPlatform;
+
+    //Counts draw calls instead of building quads, so the benchmark measures layout and widget traversal only
+    private static class HeadlessGfxPlatform extends GfxPlatform {
+        private final Theme theme;
+        private int drawCount;
+
+        HeadlessGfxPlatform(Theme theme) {
+            this.theme = theme;
+        }
+
+        @Override
+        public int getMouseX() {
+            return 0;
+        }
+
+        @Override
+        public int getMouseY() {
+            return 0;
+        }
+
+        @Override
+        public boolean isMousePressed(int mouseButton) {
+            return false;
+        }
+
+        @Override
+        public void drawRect(float x, float y, float w, float h, Color color) {
+            drawCount++;
+        }
+
+        @Override
+        public void drawRectLines(float x, float y, float w, float h, int thickness, Color color) {
+            drawCount++;
+        }
+
+        @Override
+        public void drawTexture(float x, float y, float w, float h, float uvtlx, float uvtly, float uvblx, float uvbly, float uvtrx, float uvtry, float uvbrx, float uvbry, float op1, Color color, Texture texture, Sampler sampler, boolean msdf) {
+            drawCount++;
+        }
+
+        @Override
+        public void drawTexture(float x, float y, float w, float h, Color color, Texture texture, Sampler sampler) {
+            drawCount++;
+        }
+
+        @Override
+        public void drawString(float x, float y, String text, MsdfFont font, TextEffect textEffect, Color color) {
+            drawCount += text.length();
+        }
+
+        @Override
+        public Theme getTheme() {
+            return theme;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        MsdfFont font = new MsdfFont(null, MsdfJsonLoader.load(Files.readString(Path.of("assets/fonts/Roboto/roboto-atlas.json"))));
+        gfxPlatform = new HeadlessGfxPlatform(ThemeLoader.loadTheme(Files.readString(Path.of("assets/themes/DarkMode.json"))));
+
+        //Rows of a label and a button, like the UISystem menu. TextField is left out since it registers callbacks on the Surface
+        Widget list = new ContainerWidget().setLayoutEngine(new LineLayoutEngine(LineLayoutEngine.Line.Vertical)).addHint(EdgeLayoutEngine.Bottom);
+        for (int i = 0; i < widgetCount; i += 2) {
+            list.addWidgets(new ContainerWidget().setLayoutEngine(new LineLayoutEngine(LineLayoutEngine.Line.Horizontal)).addWidgets(
+                    new Text(text("Text " + i + "\nsecond line"), font),
+                    new Button(text("Button " + i), font)
+            ));
+        }
+
+        loop = new Loop();
+        loop.setGfxPlatform(gfxPlatform);
+        loop.setWidget(new ContainerWidget().setLayoutEngine(new EdgeLayoutEngine()).addWidgets(list));
+    }
+
+    @Benchmark
+    public int update() {
+        gfxPlatform.drawCount = 0;
+        loop.update(0, 0, 1920, 1080);
+        return gfxPlatform.drawCount;
+    }
+}
@@ -0,0 +1,78 @@
+package engine.graphics;
+
+import engine.Pair;
+import engine.asset.Asset;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshDataWriterBenchmark {
+
+    @Param({"2", "5"})
+    public int subdivisions;
+
+    private MeshData meshData;
+    private ShaderProgram shaderProgram;
+    private ByteBuffer vertexBufferData, indexBufferData;
+
+    //Only the vertex layout of a ShaderProgram is used by upload(), so no renderer is needed
+    private static class HeadlessShaderProgram extends ShaderProgram {
+        HeadlessShaderProgram() {
+            super(null);
+            vertexAttributes.add(new VertexAttribute("vertex.pos_ms", 3));
+            vertexAttributes.add(new VertexAttribute("vertex.entity_index", 1));
+            vertexAttributes.add(new VertexAttribute("vertex.uv_ts", 2));
+            vertexAttributes.add(new VertexAttribute("vertex.color", 4));
+            vertexAttributes.add(new VertexAttribute("vertex.normal_ms", 3));
+            vertexAttributes.add(new VertexAttribute("vertex.tangent_ms", 3));
+        }
+
+        @Override
+        public void setBuffers(int frameIndex, DescriptorUpdate<Buffer>... bufferUpdates) {}
+
+        @Override
+        public void setCombinedTextureSamplers(int frameIndex, DescriptorUpdate<Pair<Texture, Sampler>>... textureUpdates) {}
+
+        @Override
+        public void setTextures(int frameIndex, DescriptorUpdate<Texture>... textureUpdates) {}
+
+        @Override
+        public void setSamplers(int frameIndex, DescriptorUpdate<Sampler>... samplerUpdates) {}
+
+        @Override
+        public void add(Asset<byte[]> bytecode, ShaderType shaderType) {}
+
+        @Override
+        public void assemble() {}
+
+        @Override
+        public void dispose() {}
+    }
+
+    @Setup
+    public void setup() {
+        meshData = MeshGenerator.newIcoSphere(1, subdivisions);
+        shaderProgram = new HeadlessShaderProgram();
+
+        vertexBufferData = ByteBuffer.allocateDirect(meshData.getVertexCount() * shaderProgram.getVertexAttributesSize() * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+        indexBufferData = ByteBuffer.allocateDirect(meshData.getIndexCount() * Integer.BYTES)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer upload() {
+        vertexBufferData.clear();
+        indexBufferData.clear();
+        new MeshDataWriter(0).upload(meshData, shaderProgram, vertexBufferData, indexBufferData, 0);
+        return vertexBufferData;
+    }
+}
@@ -0,0 +1,41 @@
+package engine.graphics.text;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MsdfFontBenchmark {
+
+    @Param({"16", "1024"})
+    public int length;
+
+    private MsdfFont font;
+    private String string;
+
+    @Setup
+    public void setup() throws IOException {
+        //Metrics only, the atlas texture would need a renderer
+        font = new MsdfFont(null, MsdfJsonLoader.load(Files.readString(Path.of("assets/fonts/Roboto/roboto-atlas.json"))));
+
+        String text = "Lorem ipsum dolor sit amet,\tconsectetur adipiscing elit,\nsed do eiusmod tempor incididunt ";
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            builder.append(text);
+        }
+        string = builder.substring(0, length);
+    }
+
+    @Benchmark
+    public float getStringWidth() {
+        return font.getStringWidth(string);
+    }
+}
@@ -0,0 +1,58 @@
+package engine.mio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MioCompilerBenchmark {
+
+    @Param({"100", "10000"})
+    public int actorCount;
+
+    private String source;
+
+    //Spotlight Actors nested a few levels deep, the same shape Scene.exec consumes
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < actorCount; i++) {
+            int depth = i % 4;
+            for (int d = 0; d < depth; d++) {
+                builder.append("actor \"Group").append(i).append('_').append(d).append("\"\n");
+            }
+
+            builder.append("""
+                    actor "Spotlight%d"
+                        "SpotlightComponent" data(
+                            "fovDeg" float1(25),
+                            "eye" float3(-2.0, 10.0, %d.0),
+                            "center" float3(0.0, -2.0, 0.0),
+                            "up" float3(0.0, 1.0, 0.0),
+                            "aspectRatio" float1(1.0),
+                            "zNear" float1(0.1),
+                            "zFar" float1(10.0),
+                            "zZeroToOne" bool(true),
+                            "invertY" bool(true),
+                            "color" float3(1.0, 0.0, 0.0)
+                        )
+                    end
+                    """.formatted(i, i));
+
+            for (int d = 0; d < depth; d++) {
+                builder.append("end\n");
+            }
+        }
+        source = builder.toString();
+    }
+
+    @Benchmark
+    public IRGen compile() {
+        return MioCompiler.compile(source);
+    }
+}
@@ -0,0 +1,44 @@
+package engine;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+//One EventChannel per event type. Systems register (or look up) a channel once and keep the reference, publishing
+//from any thread. The owner calls dispatch() at its sync points, so listeners always run on that thread
+public class EventBus {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<Class<?>, EventChannel<?>> channels = new HashMap<>();
+    private final List<EventChannel<?>> channelList = new CopyOnWriteArrayList<>();
+
+    //Returns the existing channel for type, or creates one with capacity preallocated events from factory
+    @SuppressWarnings("unchecked")
+    public synchronized <T> EventChannel<T> register(Class<T> type, int capacity, Supplier<T> factory) {
+        EventChannel<T> channel = (EventChannel<T>) channels.get(type);
+        if(channel == null) {
+            channel = new EventChannel<>(capacity, factory);
+            channels.put(type, channel);
+            channelList.add(channel);
+        }
+        return channel;
+    }
+
+    public <T> EventChannel<T> register(Class<T> type, Supplier<T> factory) {
+        return register(type, DEFAULT_CAPACITY, factory);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> EventChannel<T> getChannel(Class<T> type) {
+        return (EventChannel<T>) channels.get(type);
+    }
+
+    //Drains every channel into its listeners, in registration order
+    public void dispatch() {
+        for (int i = 0; i < channelList.size(); i++) {
+            channelList.get(i).dispatch();
+        }
+    }
+}
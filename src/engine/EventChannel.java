@@ -0,0 +1,111 @@
+package engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+//Bounded multi producer, single consumer ring of preallocated events. Any thread may publish, only one thread drains
+//(the Scene does this at its sync points, see EventBus). Publishing never allocates or locks:
+//
+//  long sequence = channel.claim();
+//  if(sequence != -1) {
+//      channel.get(sequence).set(...);
+//      channel.publish(sequence);
+//  }
+//
+//Event objects are reused once drained, so listeners must copy anything they want to keep
+public class EventChannel<T> {
+    private final Object[] events;
+    //Per slot sequence: equal to the claim position when free, position + 1 once published
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int mask;
+    private long head;
+    private final List<Consumer<? super T>> listeners = new CopyOnWriteArrayList<>();
+    private final Consumer<T> notifyListeners = this::notifyListeners;
+
+    public EventChannel(int capacity, Supplier<T> factory) {
+        if(capacity < 1 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+
+        events = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            events[i] = factory.get();
+            sequences.set(i, i);
+        }
+    }
+
+    //Reserves the next slot and returns its sequence, or -1 when the ring is full and the event has to be dropped
+    public long claim() {
+        while (true) {
+            long position = tail.get();
+            long difference = sequences.get((int) (position & mask)) - position;
+
+            if(difference == 0) {
+                if(tail.compareAndSet(position, position + 1)) return position;
+            }
+            else if(difference < 0) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+        }
+    }
+
+    //The pooled event behind a claimed sequence, only valid until publish()
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) events[(int) (sequence & mask)];
+    }
+
+    public void publish(long sequence) {
+        sequences.set((int) (sequence & mask), sequence + 1);
+    }
+
+    public void subscribe(Consumer<? super T> listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Consumer<? super T> listener) {
+        listeners.remove(listener);
+    }
+
+    //Consumer thread only. Hands every published event to handler in publish order and frees its slot.
+    //Stops at the first claimed but unpublished slot, the rest is picked up by the next drain
+    public int drain(Consumer<? super T> handler) {
+        int count = 0;
+        while (true) {
+            int slot = (int) (head & mask);
+            if(sequences.get(slot) != head + 1) return count;
+
+            handler.accept(get(head));
+            sequences.set(slot, head + events.length);
+            head++;
+            count++;
+        }
+    }
+
+    //Drains into every subscribed listener, events nobody listens to are simply freed
+    public int dispatch() {
+        return drain(notifyListeners);
+    }
+
+    private void notifyListeners(T event) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).accept(event);
+        }
+    }
+
+    public int getCapacity() {
+        return events.length;
+    }
+
+    //Claims refused because the ring was full, a hint that the capacity is too small or nothing drains the channel
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
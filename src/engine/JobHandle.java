@@ -0,0 +1,37 @@
+package engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+//Returned by every JobSystem call. Pass it as a dependency to later jobs or join() it to wait for the job
+public class JobHandle {
+    public static final JobHandle COMPLETED = new JobHandle(CompletableFuture.completedFuture(null));
+
+    final CompletableFuture<Void> future;
+
+    JobHandle(CompletableFuture<Void> future) {
+        this.future = future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    //Blocks until the job and everything it depends on has finished, rethrowing whatever the job threw
+    public void join() {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            if(e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    //A handle that completes once all the given handles have
+    public static JobHandle combine(JobHandle... handles) {
+        if(handles.length == 0) return COMPLETED;
+        if(handles.length == 1) return handles[0];
+        return new JobHandle(JobSystem.after(handles));
+    }
+}
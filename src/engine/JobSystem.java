@@ -0,0 +1,109 @@
+package engine;
+
+import engine.ecs.Archetype;
+import engine.ecs.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+//Engine wide work-stealing pool. Scripts, ActorSystems and asset code spawn jobs here instead of building their own thread pools.
+//Every call returns right away with a JobHandle; a job starts once all the handles it depends on have completed
+public class JobSystem {
+    private static final ForkJoinPool pool = new ForkJoinPool(
+            java.lang.Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Job Worker " + thread.getPoolIndex());
+                return thread;
+            },
+            null,
+            false
+    );
+
+    private JobSystem() {}
+
+    public interface RangeJob {
+        //Called once per batch with rows/indices start (inclusive) to end (exclusive)
+        void execute(int start, int end);
+    }
+
+    public interface ChunkJob {
+        //Called once per batch of rows inside a single Archetype, columns can be read straight from archetype
+        void execute(Archetype archetype, int start, int end);
+    }
+
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public static int getWorkerCount() {
+        return pool.getParallelism();
+    }
+
+    public static JobHandle schedule(Runnable job, JobHandle... dependencies) {
+        return new JobHandle(after(dependencies).thenRunAsync(job, pool));
+    }
+
+    //Splits [start, end) in halves until a range is at most batchSize long, idle workers steal the larger halves first
+    public static JobHandle parallelFor(int start, int end, int batchSize, RangeJob job, JobHandle... dependencies) {
+        if(batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+        return new JobHandle(after(dependencies).thenRunAsync(() -> new RangeTask(start, end, batchSize, job).invoke(), pool));
+    }
+
+    //Same as parallelFor over ranges, once for every Archetype the query matches. The rows are taken when the job starts,
+    //so structural changes must go through the EntityCommandBuffer while it runs
+    public static JobHandle parallelFor(Query query, int batchSize, ChunkJob job, JobHandle... dependencies) {
+        if(batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+        return new JobHandle(after(dependencies).thenRunAsync(() -> {
+            List<Archetype> archetypes = query.getArchetypes();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(archetypes.size());
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype archetype = archetypes.get(i);
+                if(archetype.size() == 0) continue;
+                tasks.add(new RangeTask(0, archetype.size(), batchSize, (start, end) -> job.execute(archetype, start, end)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }, pool));
+    }
+
+    static CompletableFuture<Void> after(JobHandle... dependencies) {
+        if(dependencies.length == 0) return JobHandle.COMPLETED.future;
+        if(dependencies.length == 1) return dependencies[0].future;
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            futures[i] = dependencies[i].future;
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    //Serializable only through ForkJoinTask, these never leave the process
+    @SuppressWarnings("serial")
+    private static class RangeTask extends RecursiveAction {
+        private final int start, end, batchSize;
+        private final RangeJob job;
+
+        RangeTask(int start, int end, int batchSize, RangeJob job) {
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
+            this.job = job;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= batchSize) {
+                if(end > start) job.execute(start, end);
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(new RangeTask(start, mid, batchSize, job), new RangeTask(mid, end, batchSize, job));
+        }
+    }
+}
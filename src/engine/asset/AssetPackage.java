@@ -4,6 +4,7 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import engine.FileSystem;
+import engine.JobSystem;
 import engine.Logger;
 import engine.ExceptionUtil;
 import engine.SkyRuntimeException;
@@ -21,7 +22,9 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -46,6 +49,7 @@ public class AssetPackage {
     public static AssetPackage openLocal(String namespace, Path path) {
         HashMap<String, Asset> assetMap = new HashMap<>();
         AssetPackage assetPackage = new AssetPackage(namespace, assetMap);
+        List<Path> assetPaths = new ArrayList<>();
 
         {
             try {
@@ -54,71 +58,7 @@ public class AssetPackage {
                     @NotNull
                     @Override
                     public FileVisitResult visitFile(Path assetPath, @NotNull BasicFileAttributes attrs) {
-                        String assetFilePath = assetPath.toString();
-                        String identifier = useForwardSlash(assetFilePath);
-
-                        try (MemoryStack stack = stackPush()) {
-                            Asset asset = null;
-
-                            {
-                                if (assetFilePath.endsWith("png") ||
-                                        assetFilePath.endsWith("jpg") ||
-                                        assetFilePath.endsWith("jpeg")) {
-
-
-                                    IntBuffer w = stack.callocInt(1);
-                                    IntBuffer h = stack.callocInt(1);
-                                    IntBuffer channelsInFile = stack.callocInt(1);
-                                    ByteBuffer texture = STBImage.stbi_load(
-                                            assetFilePath,
-                                            w,
-                                            h,
-                                            channelsInFile,
-                                            4
-                                    );
-                                    int size = texture.remaining();
-                                    byte[] bytes = new byte[texture.remaining()];
-
-                                    texture.limit(size);
-                                    texture.get(bytes);
-                                    texture.limit(texture.capacity()).rewind();
-
-                                    asset = new Asset<TextureData>(
-                                            assetPackage,
-                                            identifier,
-                                            new TextureData(bytes, w.get(0), h.get(0))
-                                    );
-
-                                    MemoryUtil.memFree(texture);
-                                }
-                                else if (assetFilePath.endsWith("spv")) {
-                                    asset = new Asset<byte[]>(
-                                            assetPackage,
-                                            identifier,
-                                            FileSystem.readBytes(assetPath)
-                                    );
-                                }
-                                else if (assetFilePath.endsWith("json")) {
-                                    asset = new Asset<String>(
-                                            assetPackage,
-                                            identifier,
-                                            FileSystem.readString(assetPath)
-                                    );
-                                }
-                                else if (assetFilePath.endsWith("mio")) {
-                                    asset = new Asset<String>(
-                                            assetPackage,
-                                            identifier,
-                                            FileSystem.readString(assetPath)
-                                    );
-                                }
-
-                                assetMap.put(identifier, asset);
-                                Logger.info(AssetPackage.class, "Loading asset " + identifier + " into namespace " + namespace);
-                            }
-
-
-                        }
+                        assetPaths.add(assetPath);
                         return FileVisitResult.CONTINUE;
                     }
 
@@ -147,9 +87,84 @@ public class AssetPackage {
             }
         }
 
+        //Decoding images dominates, so every file is read on the JobSystem and the map is filled in walk order afterwards
+        Asset<?>[] assets = new Asset<?>[assetPaths.size()];
+        JobSystem.parallelFor(0, assets.length, 1, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                assets[i] = loadLocal(assetPackage, assetPaths.get(i));
+            }
+        }).join();
+
+        for (int i = 0; i < assets.length; i++) {
+            String identifier = useForwardSlash(assetPaths.get(i).toString());
+            assetMap.put(identifier, assets[i]);
+            Logger.info(AssetPackage.class, "Loading asset " + identifier + " into namespace " + namespace);
+        }
+
         return assetPackage;
     }
 
+    private static Asset<?> loadLocal(AssetPackage assetPackage, Path assetPath) {
+        String assetFilePath = assetPath.toString();
+        String identifier = useForwardSlash(assetFilePath);
+
+        try (MemoryStack stack = stackPush()) {
+            if (assetFilePath.endsWith("png") ||
+                    assetFilePath.endsWith("jpg") ||
+                    assetFilePath.endsWith("jpeg")) {
+
+
+                IntBuffer w = stack.callocInt(1);
+                IntBuffer h = stack.callocInt(1);
+                IntBuffer channelsInFile = stack.callocInt(1);
+                ByteBuffer texture = STBImage.stbi_load(
+                        assetFilePath,
+                        w,
+                        h,
+                        channelsInFile,
+                        4
+                );
+                int size = texture.remaining();
+                byte[] bytes = new byte[texture.remaining()];
+
+                texture.limit(size);
+                texture.get(bytes);
+                texture.limit(texture.capacity()).rewind();
+
+                Asset<TextureData> asset = new Asset<TextureData>(
+                        assetPackage,
+                        identifier,
+                        new TextureData(bytes, w.get(0), h.get(0))
+                );
+
+                MemoryUtil.memFree(texture);
+                return asset;
+            }
+            else if (assetFilePath.endsWith("spv")) {
+                return new Asset<byte[]>(
+                        assetPackage,
+                        identifier,
+                        FileSystem.readBytes(assetPath)
+                );
+            }
+            else if (assetFilePath.endsWith("json")) {
+                return new Asset<String>(
+                        assetPackage,
+                        identifier,
+                        FileSystem.readString(assetPath)
+                );
+            }
+            else if (assetFilePath.endsWith("mio")) {
+                return new Asset<String>(
+                        assetPackage,
+                        identifier,
+                        FileSystem.readString(assetPath)
+                );
+            }
+        }
+        return null;
+    }
+
     public static AssetPackage openPackage(String namespace, Path path) {
         Kryo kryo = newKryo();
 
@@ -1,5 +1,6 @@
 package engine.audio;
 
+import engine.EventChannel;
 import org.lwjgl.openal.EXTDisconnect;
 import org.lwjgl.system.MemoryStack;
 
@@ -15,6 +16,7 @@ public class AudioContext implements ALResourceHolder {
     private AudioDevice device;
     private long handle;
     private List<AudioSource> sources = new ArrayList<>();
+    private final AudioDeviceEvent pending = new AudioDeviceEvent();
     public AudioContext(AudioDevice device) {
         this.device = device;
         handle = alcCreateContext(device.getHandle(), (int[]) null);
@@ -33,37 +35,58 @@ public class AudioContext implements ALResourceHolder {
         sources.remove(source);
     }
 
+    //Allocates a new event for every change, use pollEvent(AudioDeviceEvent) or pollEvents() every frame instead
     public Optional<AudioDeviceEvent> pollEvent() {
+        AudioDeviceEvent event = new AudioDeviceEvent();
+        return pollEvent(event) ? Optional.of(event) : Optional.empty();
+    }
+
+    //Fills event with the next pending change and returns true, or returns false when nothing changed. Doesn't allocate,
+    //so the same event can be reused every frame
+    public boolean pollEvent(AudioDeviceEvent event) {
         try(MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer pValue = stack.mallocInt(1);
 
             //ALC_EXT_disconnect
             {
-                IntBuffer pConnected = stack.mallocInt(1);
-                alcGetIntegerv(device.getHandle(), EXTDisconnect.ALC_CONNECTED, pConnected);
-                if (pConnected.get(0) == 0)
-                    return Optional.of(new AudioDeviceEvent(AudioDeviceEvent.DeviceChanged));
+                alcGetIntegerv(device.getHandle(), EXTDisconnect.ALC_CONNECTED, pValue);
+                if (pValue.get(0) == 0) {
+                    event.set(AudioDeviceEvent.DeviceChanged, null);
+                    return true;
+                }
             }
 
-            for(AudioSource source : sources) {
-                IntBuffer pPlayback = stack.mallocInt(1);
-                alGetSourcei(source.getHandle(), AL_SOURCE_STATE, pPlayback);
+            for (int i = 0; i < sources.size(); i++) {
+                AudioSource source = sources.get(i);
+                alGetSourcei(source.getHandle(), AL_SOURCE_STATE, pValue);
 
-                boolean playing = pPlayback.get(0) == AL_PLAYING;
+                boolean playing = pValue.get(0) == AL_PLAYING;
                 if(playing != source.isPlaying()) {
                     source.setPlaying(playing);
-                    if(playing)
-                        return Optional.of(new AudioDeviceEvent(AudioDeviceEvent.SourcePlayStart));
-                    else
-                        return Optional.of(new AudioDeviceEvent(AudioDeviceEvent.SourcePlayEnd));
+                    event.set(playing ? AudioDeviceEvent.SourcePlayStart : AudioDeviceEvent.SourcePlayEnd, source);
+                    return true;
                 }
             }
+        }
 
+        return false;
+    }
 
+    //Publishes every pending change into channel (see Scene.getEvents()), returns how many were published
+    public int pollEvents(EventChannel<AudioDeviceEvent> channel) {
+        int count = 0;
+        while (pollEvent(pending)) {
+            long sequence = channel.claim();
+            if(sequence != -1) {
+                channel.get(sequence).set(pending.getFlags(), pending.getSource());
+                channel.publish(sequence);
+                count++;
+            }
 
-
+            //Stays reported for as long as the device is gone, once per poll is enough
+            if(pending.hasFlag(AudioDeviceEvent.DeviceChanged)) break;
         }
-
-        return Optional.empty();
+        return count;
     }
 
     @Override
@@ -9,7 +9,11 @@ public class AudioDeviceEvent {
         setFlag(flags);
     }
 
+    //Empty event for pools, filled in by AudioContext.pollEvent
+    public AudioDeviceEvent() {}
+
     private long flags;
+    private AudioSource source;
 
     public void setFlag(long flag) {
         this.flags |= flag;
@@ -22,4 +26,14 @@ public class AudioDeviceEvent {
     public long getFlags() {
         return flags;
     }
+
+    //The source that started or stopped playing, null for DeviceChanged
+    public AudioSource getSource() {
+        return source;
+    }
+
+    void set(long flags, AudioSource source) {
+        this.flags = flags;
+        this.source = source;
+    }
 }
@@ -3,15 +3,73 @@ package engine.ecs;
 import engine.Logger;
 
 public class Actor {
-    private Object[] components = new Object[64];
-    private long mask = 0L;
-    private Actor[] children = new Actor[128];
-    private int nextChildIndex;
+    private ArchetypeStorage storage;
+    private Archetype archetype;
+    private int row;
+    private long handle;
     private String name;
     private Actor parent;
+    private Actor firstChild, lastChild;
+    private Actor prevSibling, nextSibling;
+    private int childCount;
+    private boolean transformDirty;
+    //Created through an EntityCommandBuffer and waiting for playback
+    private boolean pending;
 
     public Actor(String name) {
+        this(ArchetypeStorage.getUnattached(), name);
+    }
+
+    //insert() only gives the Actor its slot and row, it reads nothing a subclass would set up
+    @SuppressWarnings("this-escape")
+    public Actor(ArchetypeStorage storage, String name) {
         this.name = name;
+        storage.insert(this);
+    }
+
+    //Pending Actor recorded through an EntityCommandBuffer
+    Actor() {
+
+    }
+
+    //Generational handle (generation in the high 32 bits, slot in the low 32 bits), valid within the Actor's current storage
+    public long getHandle() {
+        return handle;
+    }
+
+    public boolean isAlive() {
+        return storage != null;
+    }
+
+    void setHandle(long handle) {
+        this.handle = handle;
+    }
+
+    boolean isPending() {
+        return pending;
+    }
+
+    void markPending() {
+        pending = true;
+    }
+
+    //Clears everything so a destroyed Actor can be pooled and handed out again by ArchetypeStorage.newActor
+    void recycle() {
+        storage = null;
+        archetype = null;
+        row = 0;
+        handle = 0L;
+        name = null;
+        parent = null;
+        firstChild = lastChild = null;
+        prevSibling = nextSibling = null;
+        childCount = 0;
+        transformDirty = false;
+        pending = false;
+    }
+
+    void detach() {
+        if(parent != null) parent.unlink(this);
     }
 
     public void setName(String name) {
@@ -28,77 +86,209 @@ public class Actor {
 
 
 
+    //Reparents in O(1) when the Actor already belongs to another parent in the same Scene
     public Actor addActor(Actor... actor) {
         for(Actor a : actor) {
-            a.setParent(this);
-            children[nextChildIndex++] = a;
+            if(a.parent != null) a.parent.unlink(a);
+            link(a);
+            a.setStorageRecursive(storage);
+            a.markTransformDirty();
         }
 
         return this;
     }
 
-    private void setParent(Actor actor) {
-        this.parent = actor;
+    //The removed subtree leaves this Actor's Scene and goes to the Scene's detached storage
+    public void removeActor(Actor actor) {
+        if(actor.parent != this) return;
+
+        unlink(actor);
+        actor.setStorageRecursive(storage.getDetached());
+    }
+
+    private void link(Actor child) {
+        child.parent = this;
+        child.prevSibling = lastChild;
+        child.nextSibling = null;
+
+        if(lastChild == null) firstChild = child;
+        else lastChild.nextSibling = child;
+
+        lastChild = child;
+        childCount++;
+    }
+
+    private void unlink(Actor child) {
+        if(child.prevSibling == null) firstChild = child.nextSibling;
+        else child.prevSibling.nextSibling = child.nextSibling;
+
+        if(child.nextSibling == null) lastChild = child.prevSibling;
+        else child.nextSibling.prevSibling = child.prevSibling;
+
+        child.parent = null;
+        child.prevSibling = null;
+        child.nextSibling = null;
+        childCount--;
     }
 
     public Actor getParent() {
         return parent;
     }
 
+    public Actor getFirstChild() {
+        return firstChild;
+    }
+
+    public Actor getNextSibling() {
+        return nextSibling;
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    void setStorageRecursive(ArchetypeStorage storage) {
+        if(this.storage == storage) return;
+
+        previsitAllActors(actor -> {
+            actor.transformDirty = false;
+            storage.adopt(actor);
+        });
+    }
+
+    //Queues this Actor so the TransformSystem recomputes the world transforms of its whole subtree
+    void markTransformDirty() {
+        if(transformDirty || storage == null || storage.isDetached()) return;
+
+        transformDirty = true;
+        storage.queueDirtyTransform(this);
+    }
+
+    boolean isTransformDirty() {
+        return transformDirty;
+    }
+
+    void clearTransformDirty() {
+        transformDirty = false;
+    }
+
+    void setLocation(ArchetypeStorage storage, Archetype archetype, int row) {
+        pending = false;
+        this.storage = storage;
+        this.archetype = archetype;
+        this.row = row;
+    }
+
+    void setRow(int row) {
+        this.row = row;
+    }
+
+    public ArchetypeStorage getStorage() {
+        return storage;
+    }
+
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    //Both traversals walk the sibling links iteratively, so they only touch existing children and never recurse on the Java stack
     public void previsitAllActors(ActorPreVisitor visitor) {
-        visitor.visit(this);
-        visitRecursive(visitor, this, true);
+        Actor actor = this;
+
+        while (actor != null) {
+            visitor.visit(actor);
+
+            if(actor.firstChild != null) {
+                actor = actor.firstChild;
+                continue;
+            }
+
+            while (actor != this && actor.nextSibling == null) {
+                actor = actor.parent;
+            }
+            actor = actor == this ? null : actor.nextSibling;
+        }
     }
 
     public void postvisitAllActors(ActorPostVisitor visitor) {
-        visitRecursive(visitor, this, false);
-        visitor.visit(this);
-    }
+        Actor actor = this;
+        while (actor.firstChild != null) {
+            actor = actor.firstChild;
+        }
+
+        while (true) {
+            //Read the links before visiting so the visitor may detach the Actor it is given
+            Actor next = actor.nextSibling;
+            Actor parent = actor.parent;
+            boolean last = actor == this;
 
-    private void visitRecursive(ActorVisitor visitor, Actor actor, boolean pre) {
-        Actor[] actors = actor.children;
-        for (int i = 0; i < actors.length; i++) {
-            Actor child = actors[i];
+            visitor.visit(actor);
+            if(last) return;
 
-            if(child != null) {
-                if(pre) visitor.visit(child);
-                visitRecursive(visitor, child, pre);
-                if(!pre) visitor.visit(child);
+            if(next != null) {
+                actor = next;
+                while (actor.firstChild != null) {
+                    actor = actor.firstChild;
+                }
+            }
+            else {
+                actor = parent;
             }
         }
     }
 
 
     public void add(Object component) {
-        int index = getIndex(component.getClass());
-        components[index] = component;
-        mask |= getMask(component.getClass());
+        Class<?> clazz = component.getClass();
+        int column = archetype.getColumnIndex(clazz);
+
+        if(column == -1) {
+            storage.move(this, storage.getArchetypeWith(archetype, clazz));
+            column = archetype.getColumnIndex(clazz);
+        }
+
+        archetype.set(column, row, component);
+        archetype.markChanged(column, row, storage.getVersion());
+
+        if(component instanceof TransformComponent transformComponent) transformComponent.setActor(this);
     }
 
     public boolean has(Class<?> clazz) {
-        return (mask & getMask(clazz)) != 0;
+        return archetype.getColumnIndex(ComponentRegistry.getId(clazz)) != -1;
     }
 
     public void remove(Class<?> clazz) {
-        int index = getIndex(clazz);
-        components[index] = null;
-        mask = mask & ~getMask(clazz);
+        if(!has(clazz)) return;
+        storage.move(this, storage.getArchetypeWithout(archetype, clazz));
     }
 
     public <T> T getComponent(Class<T> c) {
-        return ((T) components[getIndex(c)]);
+        return archetype.get(c, row);
+    }
+
+    //Use this instead of getComponent when the component is going to be modified, so change queries see the write
+    public <T> T getComponentMut(Class<T> c) {
+        markChanged(c);
+        return archetype.get(c, row);
     }
 
-    public static long getMask(Class<?> clazz) {
-        return clazz.getAnnotation(ComponentArray.class).mask();
+    public void markChanged(Class<?> c) {
+        if(storage == null) return;
+
+        int column = archetype.getColumnIndex(c);
+        if(column != -1) archetype.markChanged(column, row, storage.getVersion());
     }
 
-    public long getMask() {
-        return mask;
+    public ComponentMask getMask() {
+        return archetype.getMask();
     }
 
     public static int getIndex(Class<?> clazz) {
-        return 64 - Long.numberOfTrailingZeros(getMask(clazz)) - 1;
+        return ComponentRegistry.getId(clazz);
     }
 
 }
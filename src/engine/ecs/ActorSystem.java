@@ -1,8 +1,76 @@
 package engine.ecs;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public abstract class ActorSystem {
+    //Systems that never declare their component access are treated as touching everything and always run alone on the main thread
+    private Set<Class<?>> reads, writes;
+    private boolean pinned;
+    private long lastRunVersion, runVersion;
+
     public abstract void run(Actor root);
     public abstract void dispose();
+
+    protected ActorSystem reads(Class<?>... components) {
+        if(reads == null) reads = new HashSet<>();
+        if(writes == null) writes = new HashSet<>();
+        reads.addAll(Arrays.asList(components));
+        return this;
+    }
+
+    protected ActorSystem writes(Class<?>... components) {
+        if(reads == null) reads = new HashSet<>();
+        if(writes == null) writes = new HashSet<>();
+        writes.addAll(Arrays.asList(components));
+        return this;
+    }
+
+    //Systems that talk to the Surface or the Renderer must stay on the thread that calls Scene.tick()
+    protected ActorSystem pinToMainThread() {
+        pinned = true;
+        return this;
+    }
+
+    //Called by the SystemScheduler right before run()
+    void beginRun(ArchetypeStorage storage) {
+        lastRunVersion = runVersion;
+        runVersion = storage.nextVersion();
+    }
+
+    //Pass this to Query.forEachChanged to only visit components written since the start of this system's previous run.
+    //It is 0 on the first run, so everything counts as changed
+    protected long getLastRunVersion() {
+        return lastRunVersion;
+    }
+
+    public boolean isMainThread() {
+        return pinned || isExclusive();
+    }
+
+    public boolean isExclusive() {
+        return reads == null;
+    }
+
+    public Set<Class<?>> getReads() {
+        return reads;
+    }
+
+    public Set<Class<?>> getWrites() {
+        return writes;
+    }
+
+    public boolean conflictsWith(ActorSystem other) {
+        if(isExclusive() || other.isExclusive()) return true;
+
+        return intersects(writes, other.writes) || intersects(writes, other.reads) || intersects(reads, other.writes);
+    }
+
+    private static boolean intersects(Set<Class<?>> a, Set<Class<?>> b) {
+        for(Class<?> clazz : a) {
+            if(b.contains(clazz)) return true;
+        }
+        return false;
+    }
 }
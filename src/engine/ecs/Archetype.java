@@ -0,0 +1,177 @@
+package engine.ecs;
+
+import java.util.Arrays;
+
+//Every Actor with the same component mask lives in the same Archetype, one row per Actor, one dense column per component type
+public class Archetype {
+    private final ComponentMask mask;
+    private final Class<?>[] types;
+    private final int[] columnIndices;
+    private final Object[][] columns;
+    //Storage version of the last write to each row of each column, and the newest of those per column so whole
+    //Archetypes can be skipped by change queries
+    private final long[][] rowVersions;
+    private final long[] columnVersions;
+    private Actor[] actors;
+    private int size;
+
+    //Cached transitions to the Archetype reached by adding/removing a component, indexed by ComponentRegistry ID
+    private Archetype[] addEdges = new Archetype[0];
+    private Archetype[] removeEdges = new Archetype[0];
+
+    Archetype(ComponentMask mask, Class<?>[] types) {
+        this.mask = mask;
+        this.types = types;
+        this.columns = new Object[types.length][];
+        this.rowVersions = new long[types.length][];
+        this.columnVersions = new long[types.length];
+        this.actors = new Actor[16];
+
+        int maxId = -1;
+        for(Class<?> type : types) {
+            maxId = Math.max(maxId, ComponentRegistry.getId(type));
+        }
+
+        columnIndices = new int[maxId + 1];
+        Arrays.fill(columnIndices, -1);
+        for (int i = 0; i < types.length; i++) {
+            columnIndices[ComponentRegistry.getId(types[i])] = i;
+            columns[i] = new Object[actors.length];
+            rowVersions[i] = new long[actors.length];
+        }
+    }
+
+    public ComponentMask getMask() {
+        return mask;
+    }
+
+    public Class<?>[] getTypes() {
+        return types;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Actor getActor(int row) {
+        return actors[row];
+    }
+
+    public boolean has(Class<?> clazz) {
+        return getColumnIndex(ComponentRegistry.getId(clazz)) != -1;
+    }
+
+    public int getColumnIndex(Class<?> clazz) {
+        return getColumnIndex(ComponentRegistry.getId(clazz));
+    }
+
+    public int getColumnIndex(int id) {
+        return id < columnIndices.length ? columnIndices[id] : -1;
+    }
+
+    //The backing array is only valid up to size() and is replaced when the Archetype grows
+    public Object[] getColumn(Class<?> clazz) {
+        int column = getColumnIndex(clazz);
+        return column == -1 ? null : columns[column];
+    }
+
+    public Object[] getColumn(int column) {
+        return columns[column];
+    }
+
+    //A column only ever holds components of its own type
+    @SuppressWarnings("unchecked")
+    public <T> T get(Class<T> clazz, int row) {
+        int column = getColumnIndex(clazz);
+        return column == -1 ? null : (T) columns[column][row];
+    }
+
+    void set(int column, int row, Object component) {
+        columns[column][row] = component;
+    }
+
+    Archetype getAddEdge(int id) {
+        return id < addEdges.length ? addEdges[id] : null;
+    }
+
+    void setAddEdge(int id, Archetype archetype) {
+        if(id >= addEdges.length) addEdges = Arrays.copyOf(addEdges, Math.max(id + 1, addEdges.length * 2));
+        addEdges[id] = archetype;
+    }
+
+    Archetype getRemoveEdge(int id) {
+        return id < removeEdges.length ? removeEdges[id] : null;
+    }
+
+    void setRemoveEdge(int id, Archetype archetype) {
+        if(id >= removeEdges.length) removeEdges = Arrays.copyOf(removeEdges, Math.max(id + 1, removeEdges.length * 2));
+        removeEdges[id] = archetype;
+    }
+
+    public long getVersion(int column, int row) {
+        return rowVersions[column][row];
+    }
+
+    public long getColumnVersion(int column) {
+        return columnVersions[column];
+    }
+
+    void markChanged(int column, int row, long version) {
+        rowVersions[column][row] = version;
+        if(version > columnVersions[column]) columnVersions[column] = version;
+    }
+
+    void ensureCapacity(int capacity) {
+        if(capacity <= actors.length) return;
+
+        capacity = Math.max(capacity, actors.length * 2);
+        actors = Arrays.copyOf(actors, capacity);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(columns[i], capacity);
+            rowVersions[i] = Arrays.copyOf(rowVersions[i], capacity);
+        }
+    }
+
+    //Every column of a new row counts as changed at the given version
+    int addRow(Actor actor, long version) {
+        ensureCapacity(size + 1);
+
+        actors[size] = actor;
+        for (int i = 0; i < types.length; i++) {
+            markChanged(i, size, version);
+        }
+        return size++;
+    }
+
+    //Copies every component this Archetype shares with the source row, used when an Actor changes Archetype or storage.
+    //Versions only carry over within a storage, an adopted row keeps the versions addRow gave it
+    void copyRow(Archetype src, int srcRow, int dstRow, boolean copyVersions) {
+        for (int i = 0; i < types.length; i++) {
+            int srcColumn = src.getColumnIndex(types[i]);
+            if(srcColumn == -1) continue;
+
+            columns[i][dstRow] = src.columns[srcColumn][srcRow];
+            if(copyVersions) rowVersions[i][dstRow] = src.rowVersions[srcColumn][srcRow];
+        }
+    }
+
+    //Swap-removes a row, keeping the columns dense. The Actor that was moved into the hole gets its row updated
+    void removeRow(int row) {
+        int last = --size;
+
+        if(row != last) {
+            Actor moved = actors[last];
+            actors[row] = moved;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i][row] = columns[i][last];
+                rowVersions[i][row] = rowVersions[i][last];
+            }
+            moved.setRow(row);
+        }
+
+        actors[last] = null;
+        for (Object[] column : columns) {
+            column[last] = null;
+        }
+    }
+}
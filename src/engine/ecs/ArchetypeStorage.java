@@ -0,0 +1,308 @@
+package engine.ecs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ArchetypeStorage {
+    //Holds Actors that aren't attached to a Scene, their transforms are never queued
+    private final boolean detached;
+    //Where Actors removed from this storage go, see getDetached()
+    private ArchetypeStorage detachedStorage;
+    private static ArchetypeStorage unattached;
+
+    private Map<ComponentMask, Archetype> archetypes = new HashMap<>();
+    private List<Archetype> archetypeList = new CopyOnWriteArrayList<>();
+    private Archetype emptyArchetype;
+    private Map<ComponentMask, Query> queries = new HashMap<>();
+    private List<Actor> dirtyTransforms = new ArrayList<>();
+    //Writes are stamped with the current version, see nextVersion()
+    private final AtomicLong version = new AtomicLong(1);
+    //Bumped whenever an Actor enters, leaves or changes Archetype. Only changed at sync points, read by systems on the pool
+    private volatile long structuralVersion;
+
+    //Slot table behind the generational handles, freed slots are reused and their generation bumped
+    private Actor[] slots = new Actor[64];
+    private int[] generations = new int[64];
+    private int slotCount;
+    private int[] freeSlots = new int[64];
+    private int freeSlotCount;
+    private ArrayDeque<Actor> pool = new ArrayDeque<>();
+
+    private List<EntityCommandBuffer> commandBuffers = new CopyOnWriteArrayList<>();
+    private ThreadLocal<EntityCommandBuffer> threadCommandBuffer = ThreadLocal.withInitial(() -> {
+        EntityCommandBuffer commandBuffer = new EntityCommandBuffer(this);
+        commandBuffers.add(commandBuffer);
+        return commandBuffer;
+    });
+    private EntityCommandBuffer.Playback playback = new EntityCommandBuffer.Playback(this);
+
+    public ArchetypeStorage() {
+        this(false);
+    }
+
+    private ArchetypeStorage(boolean detached) {
+        this.detached = detached;
+        emptyArchetype = getArchetype(ComponentMask.EMPTY, new Class<?>[0]);
+    }
+
+    //Where Actors made outside of any Scene start, one storage shared by all of them. Like a Scene's storage it is changed
+    //from one thread at a time. Actors leave it when added to a Scene's tree, those never added stay until destroyed
+    static synchronized ArchetypeStorage getUnattached() {
+        if(unattached == null) unattached = new ArchetypeStorage(true);
+        return unattached;
+    }
+
+    //Actors removed from this storage's tree end up here. Each storage (so each Scene) has its own, which goes away with it
+    public synchronized ArchetypeStorage getDetached() {
+        if(detached) return this;
+        if(detachedStorage == null) detachedStorage = new ArchetypeStorage(true);
+        return detachedStorage;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    //The calling thread's command buffer, structural changes recorded here are applied on the next playbackCommands()
+    public EntityCommandBuffer getCommandBuffer() {
+        return threadCommandBuffer.get();
+    }
+
+    //Must only be called while no system is iterating or running, the Scene does this at its sync points
+    public void playbackCommands() {
+        for(EntityCommandBuffer commandBuffer : commandBuffers) {
+            commandBuffer.drainInto(playback);
+        }
+        playback.apply();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    //Returns the current version and starts a new one. Everything written after this call is stamped with a higher
+    //version, so passing the returned value as sinceVersion next time finds exactly the writes made in between
+    public long nextVersion() {
+        return version.getAndIncrement();
+    }
+
+    public long getStructuralVersion() {
+        return structuralVersion;
+    }
+
+    Archetype getEmptyArchetype() {
+        return emptyArchetype;
+    }
+
+    public List<Archetype> getArchetypes() {
+        return Collections.unmodifiableList(archetypeList);
+    }
+
+    //Structural changes can create Archetypes while systems on the pool create queries, both hold the storage's lock
+    private synchronized Archetype getArchetype(ComponentMask mask, Class<?>[] types) {
+        Archetype archetype = archetypes.get(mask);
+        if(archetype == null) {
+            archetype = new Archetype(mask, types);
+            archetypes.put(mask, archetype);
+            archetypeList.add(archetype);
+
+            for(Query query : queries.values()) {
+                if(query.matches(archetype)) query.addArchetype(archetype);
+            }
+        }
+
+        return archetype;
+    }
+
+    //Systems running on the scheduler's pool look up queries concurrently
+    public synchronized Query query(Class<?>... with) {
+        ComponentMask mask = ComponentMask.of(with);
+
+        Query query = queries.get(mask);
+        if(query == null) {
+            query = new Query(this, mask);
+            for(Archetype archetype : archetypeList) {
+                if(query.matches(archetype)) query.addArchetype(archetype);
+            }
+            queries.put(mask, query);
+        }
+
+        return query;
+    }
+
+    synchronized void queueDirtyTransform(Actor actor) {
+        dirtyTransforms.add(actor);
+    }
+
+    synchronized List<Actor> drainDirtyTransforms(List<Actor> empty) {
+        List<Actor> drained = dirtyTransforms;
+        dirtyTransforms = empty;
+        return drained;
+    }
+
+    synchronized Archetype getArchetypeWith(Archetype archetype, Class<?> clazz) {
+        int id = ComponentRegistry.getId(clazz);
+        Archetype next = archetype.getAddEdge(id);
+
+        if(next == null) {
+            Class<?>[] types = Arrays.copyOf(archetype.getTypes(), archetype.getTypes().length + 1);
+            types[types.length - 1] = clazz;
+            next = getArchetype(archetype.getMask().with(id), types);
+            archetype.setAddEdge(id, next);
+        }
+
+        return next;
+    }
+
+    synchronized Archetype getArchetypeWithout(Archetype archetype, Class<?> clazz) {
+        int id = ComponentRegistry.getId(clazz);
+        Archetype next = archetype.getRemoveEdge(id);
+
+        if(next == null) {
+            Class<?>[] types = Arrays.stream(archetype.getTypes()).filter(type -> type != clazz).toArray(Class<?>[]::new);
+            next = getArchetype(archetype.getMask().without(id), types);
+            archetype.setRemoveEdge(id, next);
+        }
+
+        return next;
+    }
+
+    //Hands out a pooled Actor when one is available instead of allocating a new one
+    public Actor newActor(String name) {
+        Actor actor;
+        synchronized (pool) {
+            actor = pool.poll();
+        }
+        if(actor == null) return new Actor(this, name);
+
+        actor.setName(name);
+        insert(actor);
+        return actor;
+    }
+
+    //An Actor that doesn't belong to any storage yet, it is inserted when its command buffer is played back
+    Actor newPendingActor(String name) {
+        Actor actor;
+        synchronized (pool) {
+            actor = pool.poll();
+        }
+        if(actor == null) actor = new Actor();
+
+        actor.setName(name);
+        actor.markPending();
+        return actor;
+    }
+
+    void recyclePending(Actor actor) {
+        actor.recycle();
+        synchronized (pool) {
+            pool.add(actor);
+        }
+    }
+
+    //Destroys the Actor and its whole subtree. Their handles go stale and the Actor objects are pooled for reuse
+    public void destroy(Actor actor) {
+        if(actor.getStorage() != this) return;
+
+        structuralVersion++;
+        actor.detach();
+        actor.postvisitAllActors(a -> {
+            TransformComponent transformComponent = a.getComponent(TransformComponent.class);
+            if(transformComponent != null) transformComponent.setActor(null);
+
+            a.getArchetype().removeRow(a.getRow());
+            releaseSlot(a);
+            recyclePending(a);
+        });
+    }
+
+    public Actor getActor(long handle) {
+        int slot = (int) handle;
+        int generation = (int) (handle >>> 32);
+
+        if(slot < 0 || slot >= slotCount || generations[slot] != generation) return null;
+        return slots[slot];
+    }
+
+    public boolean isAlive(long handle) {
+        return getActor(handle) != null;
+    }
+
+    private void acquireSlot(Actor actor) {
+        int slot;
+        if(freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        }
+        else {
+            if(slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount * 2);
+                generations = Arrays.copyOf(generations, slotCount * 2);
+            }
+            slot = slotCount++;
+            //Generation 0 is never handed out, so a handle of 0 never resolves
+            generations[slot] = 1;
+        }
+
+        slots[slot] = actor;
+        actor.setHandle(((long) generations[slot] << 32) | (slot & 0xFFFFFFFFL));
+    }
+
+    private void releaseSlot(Actor actor) {
+        int slot = (int) actor.getHandle();
+
+        slots[slot] = null;
+        if(++generations[slot] == 0) generations[slot] = 1;
+
+        if(freeSlotCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    void insert(Actor actor) {
+        insert(actor, emptyArchetype);
+    }
+
+    void insert(Actor actor, Archetype archetype) {
+        structuralVersion++;
+        acquireSlot(actor);
+        actor.setLocation(this, archetype, archetype.addRow(actor, version.get()));
+    }
+
+    void move(Actor actor, Archetype to) {
+        structuralVersion++;
+        Archetype from = actor.getArchetype();
+        int fromRow = actor.getRow();
+        int toRow = to.addRow(actor, version.get());
+
+        to.copyRow(from, fromRow, toRow, true);
+        from.removeRow(fromRow);
+        actor.setLocation(this, to, toRow);
+    }
+
+    //Moves an Actor (and its components) out of another storage into this one. The Actor gets a handle from this storage
+    void adopt(Actor actor) {
+        ArchetypeStorage from = actor.getStorage();
+        if(from == this) return;
+
+        Archetype fromArchetype = actor.getArchetype();
+        int fromRow = actor.getRow();
+
+        from.structuralVersion++;
+        structuralVersion++;
+        from.releaseSlot(actor);
+        acquireSlot(actor);
+
+        Archetype to = getArchetype(fromArchetype.getMask(), fromArchetype.getTypes());
+        int toRow = to.addRow(actor, version.get());
+
+        to.copyRow(fromArchetype, fromRow, toRow, false);
+        fromArchetype.removeRow(fromRow);
+        actor.setLocation(this, to, toRow);
+    }
+}
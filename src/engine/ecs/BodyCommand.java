@@ -0,0 +1,43 @@
+package engine.ecs;
+
+import com.bulletphysics.dynamics.RigidBody;
+
+import javax.vecmath.Vector3f;
+
+//A force, impulse or velocity change from a script. On a physics thread these are queued and applied right before
+//its next step, otherwise they go straight to the body
+class BodyCommand {
+    enum Type {
+        Force,
+        Impulse,
+        Torque,
+        LinearVelocity,
+        AngularVelocity
+    }
+
+    Type type;
+    RigidBodyComponent body;
+    float x, y, z;
+
+    void set(Type type, RigidBodyComponent body, float x, float y, float z) {
+        this.type = type;
+        this.body = body;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    //None of these keep the vector, so it doesn't outlive the call
+    static void apply(RigidBody rigidBody, Type type, float x, float y, float z) {
+        Vector3f vector = new Vector3f(x, y, z);
+        switch (type) {
+            case Force -> rigidBody.applyCentralForce(vector);
+            case Impulse -> rigidBody.applyCentralImpulse(vector);
+            case Torque -> rigidBody.applyTorque(vector);
+            case LinearVelocity -> rigidBody.setLinearVelocity(vector);
+            case AngularVelocity -> rigidBody.setAngularVelocity(vector);
+        }
+        //Sleeping bodies ignore forces
+        rigidBody.activate();
+    }
+}
@@ -0,0 +1,84 @@
+package engine.ecs;
+
+import java.util.Arrays;
+
+//The transforms of every body in a PhysicsSimulation after its last three steps, packed xyz and xyzw per body.
+//The threaded BulletSystem hands copies of this between the physics and the main thread
+class BodyTransforms {
+    RigidBodyComponent[] bodies = new RigidBodyComponent[64];
+    float[] olderPositions = new float[64 * 3];
+    float[] previousPositions = new float[64 * 3];
+    float[] currentPositions = new float[64 * 3];
+    float[] olderRotations = new float[64 * 4];
+    float[] previousRotations = new float[64 * 4];
+    float[] currentRotations = new float[64 * 4];
+    //Awake bodies move between these transforms, the others only need writing once after the step in changed[]
+    boolean[] moving = new boolean[64];
+    long[] changed = new long[64];
+    int count;
+    //Steps the simulation had taken when this was filled
+    long step;
+    //What stepping had cost up to then, summed since the simulation was made
+    final PhysicsStats stats = new PhysicsStats();
+
+    void ensureCapacity(int capacity) {
+        if(capacity <= bodies.length) return;
+
+        capacity = Math.max(capacity, bodies.length * 2);
+        bodies = Arrays.copyOf(bodies, capacity);
+        olderPositions = Arrays.copyOf(olderPositions, capacity * 3);
+        previousPositions = Arrays.copyOf(previousPositions, capacity * 3);
+        currentPositions = Arrays.copyOf(currentPositions, capacity * 3);
+        olderRotations = Arrays.copyOf(olderRotations, capacity * 4);
+        previousRotations = Arrays.copyOf(previousRotations, capacity * 4);
+        currentRotations = Arrays.copyOf(currentRotations, capacity * 4);
+        moving = Arrays.copyOf(moving, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+    }
+
+    void move(int from, int to) {
+        bodies[to] = bodies[from];
+        System.arraycopy(olderPositions, from * 3, olderPositions, to * 3, 3);
+        System.arraycopy(previousPositions, from * 3, previousPositions, to * 3, 3);
+        System.arraycopy(currentPositions, from * 3, currentPositions, to * 3, 3);
+        System.arraycopy(olderRotations, from * 4, olderRotations, to * 4, 4);
+        System.arraycopy(previousRotations, from * 4, previousRotations, to * 4, 4);
+        System.arraycopy(currentRotations, from * 4, currentRotations, to * 4, 4);
+        moving[to] = moving[from];
+        changed[to] = changed[from];
+    }
+
+    //Makes room for the transform of a new step
+    void shift(int i) {
+        System.arraycopy(previousPositions, i * 3, olderPositions, i * 3, 3);
+        System.arraycopy(previousRotations, i * 4, olderRotations, i * 4, 4);
+        System.arraycopy(currentPositions, i * 3, previousPositions, i * 3, 3);
+        System.arraycopy(currentRotations, i * 4, previousRotations, i * 4, 4);
+    }
+
+    //The latest transform replaces the earlier ones, so there is nothing to interpolate
+    void settle(int i) {
+        System.arraycopy(currentPositions, i * 3, olderPositions, i * 3, 3);
+        System.arraycopy(currentRotations, i * 4, olderRotations, i * 4, 4);
+        System.arraycopy(currentPositions, i * 3, previousPositions, i * 3, 3);
+        System.arraycopy(currentRotations, i * 4, previousRotations, i * 4, 4);
+    }
+
+    void copyFrom(BodyTransforms other) {
+        ensureCapacity(other.count);
+        int n = other.count;
+        System.arraycopy(other.bodies, 0, bodies, 0, n);
+        if(count > n) Arrays.fill(bodies, n, count, null);
+        System.arraycopy(other.olderPositions, 0, olderPositions, 0, n * 3);
+        System.arraycopy(other.previousPositions, 0, previousPositions, 0, n * 3);
+        System.arraycopy(other.currentPositions, 0, currentPositions, 0, n * 3);
+        System.arraycopy(other.olderRotations, 0, olderRotations, 0, n * 4);
+        System.arraycopy(other.previousRotations, 0, previousRotations, 0, n * 4);
+        System.arraycopy(other.currentRotations, 0, currentRotations, 0, n * 4);
+        System.arraycopy(other.moving, 0, moving, 0, n);
+        System.arraycopy(other.changed, 0, changed, 0, n);
+        count = n;
+        step = other.step;
+        stats.set(other.stats);
+    }
+}
@@ -0,0 +1,45 @@
+package engine.ecs;
+
+import engine.graphics.MeshData;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.List;
+
+//Local space AABB of an Actor. The SpatialSystem keeps the world space bounds and the tree proxy up to date,
+//change min/max through Actor.getComponentMut (or call Actor.markChanged) so it notices
+@ComponentArray
+public class BoundsComponent {
+    public final Vector3f min, max;
+    final Vector3f worldMin = new Vector3f(), worldMax = new Vector3f();
+    int proxy = DynamicAabbTree.NULL;
+    Actor actor;
+
+    public BoundsComponent(Vector3fc min, Vector3fc max) {
+        this.min = new Vector3f(min);
+        this.max = new Vector3f(max);
+    }
+
+    public static BoundsComponent of(MeshData meshData) {
+        List<Float> positions = meshData.getData().get("Positions");
+
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int i = 0; i + 2 < positions.size(); i += 3) {
+            float x = positions.get(i), y = positions.get(i + 1), z = positions.get(i + 2);
+            min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+            max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+        }
+
+        if(min.x > max.x) return new BoundsComponent(new Vector3f(), new Vector3f());
+        return new BoundsComponent(min, max);
+    }
+
+    public Vector3fc worldMin() {
+        return worldMin;
+    }
+
+    public Vector3fc worldMax() {
+        return worldMax;
+    }
+}
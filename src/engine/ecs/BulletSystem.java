@@ -1,48 +1,85 @@
 package engine.ecs;
 
-import com.bulletphysics.collision.broadphase.BroadphaseInterface;
-import com.bulletphysics.collision.broadphase.DbvtBroadphase;
-import com.bulletphysics.collision.dispatch.CollisionConfiguration;
-import com.bulletphysics.collision.dispatch.CollisionDispatcher;
-import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
-import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
-import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
-import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
 import com.bulletphysics.linearmath.DefaultMotionState;
 import com.bulletphysics.linearmath.Transform;
+import engine.EventChannel;
+import engine.SkyRuntimeException;
 import engine.SystemState;
 import engine.Time;
+import engine.physics.CollisionSnapshot;
 import engine.physics.Physics;
 import engine.physics.MathUtil;
+import org.joml.Matrix4fc;
 import org.joml.Quaternionf;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.List;
 
-public class BulletSystem extends ActorSystem {
-    private DiscreteDynamicsWorld dynamicsWorld;
+public final class BulletSystem extends ActorSystem {
+    private final PhysicsSimulation simulation;
+    private PhysicsThread physicsThread;
+    //What the main thread writes back from while physics runs on its own thread
+    private BodyTransforms front = new BodyTransforms();
+    private long requestedSteps;
 
     //A few variables to avoid reallocating objects (VM -> vecmath, JML -> JOML)
     private Transform transformVM = new Transform();
     private Quat4f rotVM = new Quat4f();
     private Quaternionf rotJML = new Quaternionf();
+    private Quaternionf prevRotJML = new Quaternionf();
+    private org.joml.Matrix4f worldJML = new org.joml.Matrix4f();
+    private org.joml.Matrix4f parentJML = new org.joml.Matrix4f();
     private Matrix4f posVM = new Matrix4f();
+    private Vector3f originVM = new Vector3f();
+    private Vector3f inertiaVM = new Vector3f();
     private float accumulator = 0;
     private float timestep = 1 / 60f;
+    private boolean interpolate = true;
+
+    private static final int CONTACT_CAPACITY = 8192;
+    private final EventChannel<ContactEvent> contacts;
+    private final CollisionSnapshot snapshot = new CollisionSnapshot();
+    private final Transform snapshotTransformVM = new Transform();
+    private final Quat4f snapshotRotVM = new Quat4f();
+
+    //Dense list of every body added to the world, indexed by RigidBodyComponent.index
+    private RigidBodyComponent[] registered = new RigidBodyComponent[64];
+    private int registeredCount;
+    private ArchetypeStorage bodyStorage;
+    private Query rigidBodies;
+    private long structuralVersion = -1;
+
+    //The latest frame, and the totals it was taken from
+    private final PhysicsStats stats = new PhysicsStats();
+    private final PhysicsStats seenStats = new PhysicsStats();
+    private final PhysicsHistory history = new PhysicsHistory(240);
+
+    //Contact events go to the Scene's EventBus and reach listeners during Scene.tick()
+    public BulletSystem(Scene scene) {
+        this(scene.getEvents().register(ContactEvent.class, CONTACT_CAPACITY, ContactEvent::new));
+    }
 
+    //Contact events stay in a channel of their own, drain it with getContacts().drain() or dispatch()
     public BulletSystem() {
-        BroadphaseInterface broadphaseInterface = new DbvtBroadphase();
-        CollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
-        CollisionDispatcher collisionDispatcher = new CollisionDispatcher(collisionConfiguration);
-        ConstraintSolver constraintSolver = new SequentialImpulseConstraintSolver();
+        this(new EventChannel<>(CONTACT_CAPACITY, ContactEvent::new));
+    }
 
+    private BulletSystem(EventChannel<ContactEvent> contacts) {
+        this.contacts = contacts;
+        simulation = new PhysicsSimulation(contacts);
+        Physics.world = simulation.getWorld();
+        snapshot.setSource(this::fillSnapshot);
+        Physics.snapshot = snapshot;
 
-        dynamicsWorld = new DiscreteDynamicsWorld(collisionDispatcher, broadphaseInterface, constraintSolver, collisionConfiguration);
-        dynamicsWorld.setGravity(new Vector3f(0, -9.81f, 0));
-        Physics.world = dynamicsWorld;
+        writes(RigidBodyComponent.class, TransformComponent.class, ScriptComponent.class);
+        //Runs fixedUpdate, and unmarked scripts must stay on the main thread like in the ScriptSystem
+        pinToMainThread();
     }
 
     @Override
@@ -50,95 +87,331 @@ public class BulletSystem extends ActorSystem {
         if(SystemState.running) {
             float frameTime = Math.min(Time.deltaTime(), 0.25f);
             accumulator += frameTime;
-            while (accumulator >= timestep) {
+            int droppedSteps = (int) ((Time.deltaTime() - frameTime) / timestep);
 
-                root.previsitAllActors(actor -> {
-                    if(actor.has(RigidBodyComponent.class)) {
-                        RigidBodyComponent rigidBodyComponent = actor.getComponent(RigidBodyComponent.class);
-                        TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
+            ArchetypeStorage storage = root.getStorage();
+            if(storage != bodyStorage) {
+                bodyStorage = storage;
+                rigidBodies = storage.query(RigidBodyComponent.class, TransformComponent.class);
+                structuralVersion = -1;
+            }
+            Query scripts = storage.query(ScriptComponent.class);
+
+            updateBodies(storage);
+
+            if(physicsThread == null) {
+                while (accumulator >= timestep) {
+                    ScriptSystem.runScripts(scripts, (script, actor) -> script.fixedUpdate(actor, timestep));
+                    updateBodies(storage);
+                    if(simulation.step(timestep)) snapshot.invalidate();
+                    accumulator -= timestep;
+                }
+
+                //Runs on frames without a step too, awake bodies keep moving between their last two steps
+                long writeStart = System.nanoTime();
+                writeTransforms(simulation.getTransforms(), 1 + getAlpha());
+                updateStats(simulation.getTransforms(), System.nanoTime() - writeStart, droppedSteps);
+            }
+            else {
+                if(physicsThread.getError() != null) throw new RuntimeException("Physics thread failed", physicsThread.getError());
+
+                //Taken before requesting this frame's steps, so it is complete unless the physics thread can't keep up
+                BodyTransforms previous = front;
+                front = physicsThread.swap(front);
+                if(front != previous) snapshot.invalidate();
+
+                //Scripts still run on this thread, their forces are queued for the physics thread
+                int steps = 0;
+                while (accumulator >= timestep) {
+                    ScriptSystem.runScripts(scripts, (script, actor) -> script.fixedUpdate(actor, timestep));
+                    updateBodies(storage);
+                    accumulator -= timestep;
+                    steps++;
+                }
+                int acceptedSteps = physicsThread.requestSteps(steps, timestep);
+                requestedSteps += acceptedSteps;
+                droppedSteps += steps - acceptedSteps;
+
+                //Rendered one step further behind than without the thread, so the time in between is always covered
+                //by the last three finished steps, whether this frame requested a step or not
+                float position = interpolate ? requestedSteps - front.step + accumulator / timestep : 2;
+                long writeStart = System.nanoTime();
+                writeTransforms(front, Math.min(position, 2));
+                updateStats(front, System.nanoTime() - writeStart, droppedSteps);
+            }
+        }
 
-                        if(!rigidBodyComponent.active) {
+    }
 
-                            org.joml.Vector3f pos = new org.joml.Vector3f(
-                                    transformComponent.transform().m30(),
-                                    transformComponent.transform().m31(),
-                                    transformComponent.transform().m32()
-                            );
+    //Bodies can only appear or go stale when components are added/removed or Actors are created/destroyed. Checked again
+    //after every fixedUpdate, which may do either, so writeTransforms never sees an Actor that lost its body
+    private void updateBodies(ArchetypeStorage storage) {
+        if(storage.getStructuralVersion() == structuralVersion) return;
 
-                            Quaternionf rotation = new Quaternionf();
-                            {
-                                transformComponent.transform().getNormalizedRotation(rotation);
-                            }
+        structuralVersion = storage.getStructuralVersion();
+        removeStale(storage);
+        createBodies();
+        snapshot.invalidate();
+    }
 
+    private void createBodies() {
+        List<Archetype> archetypes = rigidBodies.getArchetypes();
+        for (int i = 0; i < archetypes.size(); i++) {
+            Archetype archetype = archetypes.get(i);
+            Object[] bodies = archetype.getColumn(RigidBodyComponent.class);
+            Object[] transforms = archetype.getColumn(TransformComponent.class);
+
+            for (int row = 0; row < archetype.size(); row++) {
+                RigidBodyComponent rigidBodyComponent = (RigidBodyComponent) bodies[row];
+                if(rigidBodyComponent.active) continue;
+                //Tried again next frame, the structural version alone wouldn't bring it back here
+                if(rigidBodyComponent.removing) {
+                    structuralVersion = -1;
+                    continue;
+                }
+
+                createBody(archetype.getActor(row), rigidBodyComponent, (TransformComponent) transforms[row]);
+            }
+        }
+    }
 
+    private void createBody(Actor actor, RigidBodyComponent rigidBodyComponent, TransformComponent transformComponent) {
+        //The motion state and construction info copy the start transform and inertia, so the scratch objects can be reused
+        if(rigidBodyComponent.startTransform != null) transformVM.set(rigidBodyComponent.startTransform);
+        else {
+            //Bodies live in world space, the Actor's world transform may not be up to date yet
+            Matrix4fc world = parentWorld(actor, parentJML) ? parentJML.mul(transformComponent.local(), worldJML) : transformComponent.local();
+            world.getNormalizedRotation(rotJML);
+            MathUtil.copy(rotJML, rotVM);
+            originVM.set(world.m30(), world.m31(), world.m32());
+            posVM.set(rotVM, originVM, 1.0f);
+            transformVM.set(posVM);
+        }
 
-                            rigidBodyComponent.motionState = new DefaultMotionState(new Transform(new Matrix4f(
-                                    MathUtil.quat4(rotation),
-                                    MathUtil.vec3(pos),
-                                    1.0f
-                            )));
+        rigidBodyComponent.motionState = new DefaultMotionState(transformVM);
 
-                            Vector3f inertia = new Vector3f(0, 0, 0);
-                            rigidBodyComponent.collider.getCollisionShape().calculateLocalInertia(rigidBodyComponent.mass, inertia);
-                            rigidBodyComponent.constructionInfo = new RigidBodyConstructionInfo(
-                                    rigidBodyComponent.mass,
-                                    rigidBodyComponent.motionState,
-                                    rigidBodyComponent.collider.getCollisionShape(),
-                                    inertia
-                            );
+        if(rigidBodyComponent.collider.isShapeModified()) {
+            throw new SkyRuntimeException("The shared collision shape of " + actor.getName() + " was modified, modify the shape of Collider.unshared() instead");
+        }
 
-                            rigidBodyComponent.constructionInfo.friction = rigidBodyComponent.mat.friction;
+        //Triangle meshes can only be static in jbullet, whatever mass the component asks for
+        CollisionShape shape = rigidBodyComponent.collider.getCollisionShape();
+        float mass = shape.isConcave() ? 0 : rigidBodyComponent.mass;
 
+        inertiaVM.set(0, 0, 0);
+        if(mass != 0) shape.calculateLocalInertia(mass, inertiaVM);
+        rigidBodyComponent.constructionInfo = new RigidBodyConstructionInfo(
+                mass,
+                rigidBodyComponent.motionState,
+                rigidBodyComponent.collider.getCollisionShape(),
+                inertiaVM
+        );
 
-                            rigidBodyComponent.rigidBody = new RigidBody(rigidBodyComponent.constructionInfo);
-                            rigidBodyComponent.rigidBody.setUserPointer(actor);
-                            rigidBodyComponent.rigidBody.setAngularFactor(rigidBodyComponent.rotate ? 1f : 0f);
+        rigidBodyComponent.constructionInfo.friction = rigidBodyComponent.mat.friction;
 
-                            dynamicsWorld.addRigidBody(rigidBodyComponent.rigidBody);
 
+        rigidBodyComponent.rigidBody = new RigidBody(rigidBodyComponent.constructionInfo);
+        rigidBodyComponent.rigidBody.setUserPointer(actor);
+        rigidBodyComponent.rigidBody.setAngularFactor(rigidBodyComponent.rotate ? 1f : 0f);
 
-                            rigidBodyComponent.active = true;
-                        }
-                        else {
-                            transformVM.setIdentity();
-                            rigidBodyComponent.rigidBody.getWorldTransform(transformVM);
+        rigidBodyComponent.active = true;
+        register(actor, rigidBodyComponent);
+        if(physicsThread == null) simulation.add(rigidBodyComponent);
+        else physicsThread.add(rigidBodyComponent);
+    }
 
-                            posVM.setIdentity();
-                            transformVM.getMatrix(posVM);
-                            transformVM.getRotation(rotVM);
+    private void register(Actor actor, RigidBodyComponent rigidBodyComponent) {
+        if(registeredCount == registered.length) registered = Arrays.copyOf(registered, registeredCount * 2);
 
-                            MathUtil.copy(rotVM, rotJML);
+        rigidBodyComponent.actor = actor;
+        rigidBodyComponent.handle = actor.getHandle();
+        rigidBodyComponent.index = registeredCount;
+        rigidBodyComponent.thread = physicsThread;
+        registered[registeredCount++] = rigidBodyComponent;
+    }
 
-                            float x = posVM.m03;
-                            float y = posVM.m13;
-                            float z = posVM.m23;
+    private void removeStale(ArchetypeStorage storage) {
+        for (int i = registeredCount - 1; i >= 0; i--) {
+            RigidBodyComponent rigidBodyComponent = registered[i];
+            Actor actor = rigidBodyComponent.actor;
+            boolean live = actor.getStorage() == storage &&
+                    actor.getComponent(RigidBodyComponent.class) == rigidBodyComponent &&
+                    actor.has(TransformComponent.class);
+            if(live) continue;
+
+            if(physicsThread == null) simulation.remove(rigidBodyComponent);
+            else physicsThread.remove(rigidBodyComponent);
+            rigidBodyComponent.active = false;
+            rigidBodyComponent.actor = null;
+            rigidBodyComponent.index = -1;
+            rigidBodyComponent.thread = null;
+
+            int last = --registeredCount;
+            if(i != last) {
+                registered[i] = registered[last];
+                registered[i].index = i;
+            }
+            registered[last] = null;
+        }
+    }
 
-                            transformComponent
-                                    .transform()
-                                    .identity()
-                                    .translate(x, y, z)
-                                    .rotate(rotJML);
+    //Once per frame. Awake bodies are interpolated between their last steps (slerp for the rotation), so rendering stays
+    //smooth at any frame rate while physics keeps its fixed timestep. position counts steps from the oldest of the three
+    //transforms, 1 + alpha without a physics thread. This lags the simulation by up to one step, the bodies themselves
+    //always hold the latest step
+    private void writeTransforms(BodyTransforms transforms, float position) {
+        //Between the older and the previous step, or the previous and the latest one
+        boolean latest = position >= 1;
+        float alpha = latest ? position - 1 : position;
+        float[] previousPositions = latest ? transforms.previousPositions : transforms.olderPositions;
+        float[] currentPositions = latest ? transforms.currentPositions : transforms.previousPositions;
+        float[] previousRotations = latest ? transforms.previousRotations : transforms.olderRotations;
+        float[] currentRotations = latest ? transforms.currentRotations : transforms.previousRotations;
+
+        for (int i = 0; i < transforms.count; i++) {
+            RigidBodyComponent rigidBodyComponent = transforms.bodies[i];
+            //Removed from the world after these transforms were taken
+            if(rigidBodyComponent.index == -1) continue;
+            if(!transforms.moving[i] && transforms.changed[i] <= rigidBodyComponent.writtenStep) continue;
+            rigidBodyComponent.writtenStep = transforms.step;
+
+            int p = i * 3, r = i * 4;
+            float x = previousPositions[p] + (currentPositions[p] - previousPositions[p]) * alpha;
+            float y = previousPositions[p + 1] + (currentPositions[p + 1] - previousPositions[p + 1]) * alpha;
+            float z = previousPositions[p + 2] + (currentPositions[p + 2] - previousPositions[p + 2]) * alpha;
+            prevRotJML.set(previousRotations[r], previousRotations[r + 1], previousRotations[r + 2], previousRotations[r + 3]);
+            rotJML.set(currentRotations[r], currentRotations[r + 1], currentRotations[r + 2], currentRotations[r + 3]);
+            prevRotJML.slerp(rotJML, alpha);
+
+            //The simulated pose is the world one, under a transformed parent it goes back through the parent's inverse
+            org.joml.Matrix4f local = rigidBodyComponent.actor.getComponent(TransformComponent.class).transform();
+            if(parentWorld(rigidBodyComponent.actor, parentJML)) parentJML.invert().translate(x, y, z).rotate(prevRotJML, local);
+            else local.identity().translate(x, y, z).rotate(prevRotJML);
+        }
+    }
 
-                        }
+    //Combines the local transforms of the Actor's ancestors, false when none of them has a TransformComponent
+    private static boolean parentWorld(Actor actor, org.joml.Matrix4f dest) {
+        boolean found = false;
+        dest.identity();
+        for(Actor parent = actor.getParent(); parent != null; parent = parent.getParent()) {
+            TransformComponent transformComponent = parent.getComponent(TransformComponent.class);
+            if(transformComponent == null) continue;
 
+            dest.mulLocal(transformComponent.local());
+            found = true;
+        }
+        return found;
+    }
 
-                    }
-                    if(actor.has(ScriptComponent.class)) actor.getComponent(ScriptComponent.class).script().fixedUpdate(actor, timestep);
+    //transforms carry the simulation's totals up to their step, the frame is what they added since the previous one
+    private void updateStats(BodyTransforms transforms, long writeNanos, int droppedSteps) {
+        stats.setDifference(transforms.stats, seenStats);
+        seenStats.set(transforms.stats);
+        stats.syncNanos += writeNanos;
+        stats.totalNanos += writeNanos;
+        stats.droppedSteps += droppedSteps;
+        history.add(stats);
+    }
 
+    //Runs on the first query after an invalidate(). Without a physics thread the world itself is idle outside of run(),
+    //with one only the latest finished transforms are consistent, so bodies added to Physics.world directly are left out
+    private void fillSnapshot(CollisionSnapshot snapshot) {
+        if(physicsThread == null) {
+            snapshot.addAll(simulation.getWorld());
+            return;
+        }
 
-                });
+        float[] positions = front.currentPositions, rotations = front.currentRotations;
+        for (int i = 0; i < front.count; i++) {
+            RigidBodyComponent rigidBodyComponent = front.bodies[i];
+            if(rigidBodyComponent.index == -1) continue;
 
+            snapshotRotVM.set(rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3]);
+            snapshotTransformVM.setRotation(snapshotRotVM);
+            snapshotTransformVM.origin.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            snapshot.add(rigidBodyComponent.rigidBody, snapshotTransformVM);
+        }
+    }
 
+    //How far the time left in the accumulator is into the next step, 0 to 1. 1 when interpolation is off
+    public float getAlpha() {
+        return interpolate ? accumulator / timestep : 1;
+    }
 
-                dynamicsWorld.stepSimulation(timestep, 4, timestep);
-                accumulator -= timestep;
-            }
+    public void setInterpolation(boolean interpolate) {
+        this.interpolate = interpolate;
+    }
+
+    public float getTimestep() {
+        return timestep;
+    }
+
+    public void setTimestep(float timestep) {
+        this.timestep = timestep;
+    }
+
+    //Steps physics on a dedicated thread, so a heavy step overlaps rendering instead of adding to the frame. Scripts
+    //keep running fixedUpdate on the main thread and must change bodies through the RigidBodyComponent methods, not
+    //rigidBody or Physics.world, which belong to the physics thread while this is on. Can be switched at any time
+    public void setThreaded(boolean threaded) {
+        if(threaded == (physicsThread != null)) return;
+
+        if(threaded) {
+            physicsThread = new PhysicsThread(simulation);
+            front = new BodyTransforms();
+            front.stats.set(simulation.getTransforms().stats);
+            requestedSteps = simulation.getTransforms().step;
         }
+        else {
+            physicsThread.stop();
+            physicsThread = null;
+        }
+        for (int i = 0; i < registeredCount; i++) registered[i].thread = physicsThread;
+        snapshot.invalidate();
+    }
+
+    public boolean isThreaded() {
+        return physicsThread != null;
+    }
+
+    //Records what goes into the simulation from here on, see PhysicsRecorder. Start before the first tick for a
+    //recording that replays exactly. The physics thread, if any, is stopped for a moment so nothing is missed
+    public void startRecording(PhysicsRecorder recorder) {
+        boolean threaded = isThreaded();
+        setThreaded(false);
+        simulation.startRecording(recorder);
+        setThreaded(threaded);
+    }
+
+    //Steps still pending on the physics thread are taken first and make it into the recording
+    public void stopRecording() {
+        boolean threaded = isThreaded();
+        setThreaded(false);
+        simulation.stopRecording();
+        setThreaded(threaded);
+    }
+
+    PhysicsSimulation getSimulation() {
+        return simulation;
+    }
+
+    //Physics of the latest frame. Updated in place every frame, copy what should be kept
+    public PhysicsStats getStats() {
+        return stats;
+    }
 
+    //The last 240 frames
+    public PhysicsHistory getHistory() {
+        return history;
+    }
+
+    public EventChannel<ContactEvent> getContacts() {
+        return contacts;
     }
 
     @Override
     public void dispose() {
-
+        setThreaded(false);
     }
 }
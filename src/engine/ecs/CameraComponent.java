@@ -2,7 +2,7 @@ package engine.ecs;
 
 import engine.graphics.Camera;
 
-@ComponentArray(mask = 1 << 1)
+@ComponentArray
 public class CameraComponent {
     public Camera camera;
 
@@ -0,0 +1,14 @@
+package engine.ecs;
+
+import java.util.function.Consumer;
+
+public interface CellLoader {
+    //Runs on a streaming thread. Builds the cell into its own storage and returns the cell's root Actor,
+    //anything that creates GPU resources must be handed to mainThread instead of being done here
+    Actor load(Scene scene, ArchetypeStorage storage, Consumer<Runnable> mainThread);
+
+    //Runs on the main thread after the cell's Actors were destroyed, for releasing whatever load() allocated outside the ECS
+    default void unload(StreamingCell cell) {
+
+    }
+}
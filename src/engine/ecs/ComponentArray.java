@@ -5,8 +5,11 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+//Marks a component class. Component IDs are handed out by ComponentRegistry, so any class can be used as a component
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface ComponentArray {
+    //No longer read, kept so existing components still compile
+    @Deprecated
     long mask() default 0L;
-}
\ No newline at end of file
+}
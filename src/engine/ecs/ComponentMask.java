@@ -0,0 +1,78 @@
+package engine.ecs;
+
+import java.util.Arrays;
+
+//Immutable multi-word bitset of ComponentRegistry IDs
+public final class ComponentMask {
+    public static final ComponentMask EMPTY = new ComponentMask(new long[0]);
+
+    private final long[] words;
+    private final int hash;
+
+    private ComponentMask(long[] words) {
+        this.words = words;
+        this.hash = Arrays.hashCode(words);
+    }
+
+    public static ComponentMask of(Class<?>... types) {
+        ComponentMask mask = EMPTY;
+        for(Class<?> type : types) {
+            mask = mask.with(ComponentRegistry.getId(type));
+        }
+        return mask;
+    }
+
+    public boolean has(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    public ComponentMask with(int id) {
+        if(has(id)) return this;
+
+        long[] newWords = Arrays.copyOf(words, Math.max(words.length, (id >>> 6) + 1));
+        newWords[id >>> 6] |= 1L << id;
+        return new ComponentMask(newWords);
+    }
+
+    public ComponentMask without(int id) {
+        if(!has(id)) return this;
+
+        long[] newWords = words.clone();
+        newWords[id >>> 6] &= ~(1L << id);
+
+        //Trim trailing empty words so equal sets always compare equal
+        int length = newWords.length;
+        while (length > 0 && newWords[length - 1] == 0) length--;
+        return new ComponentMask(Arrays.copyOf(newWords, length));
+    }
+
+    public boolean containsAll(ComponentMask other) {
+        if(other.words.length > words.length) return false;
+
+        for (int i = 0; i < other.words.length; i++) {
+            if((words[i] & other.words[i]) != other.words[i]) return false;
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for(long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof ComponentMask other)) return false;
+        return hash == other.hash && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,48 @@
+package engine.ecs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Hands out a dense int ID to every component class. Classes are registered on first use,
+//after which the ID is cached on the class itself through ClassValue, so lookups never touch reflection
+public class ComponentRegistry {
+    private static final Map<Class<?>, Integer> ids = new HashMap<>();
+    private static final List<Class<?>> types = new ArrayList<>();
+
+    private static final ClassValue<Integer> cachedIds = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return assign(type);
+        }
+    };
+
+    private ComponentRegistry() {}
+
+    private static synchronized int assign(Class<?> type) {
+        Integer id = ids.get(type);
+        if(id == null) {
+            id = types.size();
+            ids.put(type, id);
+            types.add(type);
+        }
+        return id;
+    }
+
+    public static int register(Class<?> type) {
+        return cachedIds.get(type);
+    }
+
+    public static int getId(Class<?> type) {
+        return cachedIds.get(type);
+    }
+
+    public static synchronized Class<?> getType(int id) {
+        return types.get(id);
+    }
+
+    public static synchronized int getCount() {
+        return types.size();
+    }
+}
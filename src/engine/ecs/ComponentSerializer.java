@@ -0,0 +1,16 @@
+package engine.ecs;
+
+import java.nio.ByteBuffer;
+
+//Binary form of a component inside a SceneSnapshot. read() is handed the mapped snapshot positioned at the component's data,
+//it must not keep the buffer or a slice of it
+public interface ComponentSerializer<T> {
+    int sizeOf(T component);
+    void write(T component, ByteBuffer buffer);
+    T read(Scene scene, ByteBuffer buffer);
+
+    //Components that create GPU resources can't be read on a streaming thread, their bytes are copied and read on the main thread
+    default boolean requiresMainThread() {
+        return false;
+    }
+}
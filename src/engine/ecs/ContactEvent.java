@@ -0,0 +1,83 @@
+package engine.ecs;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+//Published by BulletSystem once per fixed step for every touching pair of rigid bodies, except Stay while the whole pair
+//is asleep. Events are pooled, so a listener must copy anything it wants to keep. Actors are null if they were destroyed
+//since the step, or before the pair separated. Read them on the main thread (during dispatch), where Actors are destroyed
+public class ContactEvent {
+    public enum Type {
+        Begin,
+        Stay,
+        End,
+    }
+
+    private Type type;
+    private Actor a, b;
+    private long handleA, handleB;
+    private int contactCount;
+    private float impulse;
+    private final Vector3f point = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+
+    public Type getType() {
+        return type;
+    }
+
+    public Actor getA() {
+        return alive(a, handleA);
+    }
+
+    public Actor getB() {
+        return alive(b, handleB);
+    }
+
+    //Destroyed Actors are pooled and may already stand for something else, their handle tells them apart
+    private static Actor alive(Actor actor, long handle) {
+        if(actor == null || !actor.isAlive()) return null;
+        return handle == 0 || actor.getHandle() == handle ? actor : null;
+    }
+
+    //Touching points in the pair's manifold, 0 for End
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    //Sum of the impulses the solver applied at the contact points during the step
+    public float getImpulse() {
+        return impulse;
+    }
+
+    //Deepest contact point, on b's surface
+    public Vector3fc getPoint() {
+        return point;
+    }
+
+    //Contact normal on b, pointing towards a
+    public Vector3fc getNormal() {
+        return normal;
+    }
+
+    void set(Type type, Actor a, Actor b, long handleA, long handleB, int contactCount, float impulse) {
+        this.type = type;
+        this.a = a;
+        this.b = b;
+        this.handleA = handleA;
+        this.handleB = handleB;
+        this.contactCount = contactCount;
+        this.impulse = impulse;
+        if(contactCount == 0) {
+            point.zero();
+            normal.zero();
+        }
+    }
+
+    Vector3f point() {
+        return point;
+    }
+
+    Vector3f normal() {
+        return normal;
+    }
+}
@@ -0,0 +1,168 @@
+package engine.ecs;
+
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.narrowphase.ManifoldPoint;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import engine.EventChannel;
+
+import java.util.Arrays;
+import java.util.Map;
+
+//Turns the dispatcher's contact manifolds into Begin/Stay/End ContactEvents. Pairs are keyed by the two bodies'
+//broadphase ids packed into a long and kept in dense arrays, so a step allocates nothing once the arrays have grown.
+//This may run on the physics thread, so it never reads the Actors, ContactEvent checks them on the main thread
+class ContactTracker {
+    private final Map<CollisionObject, RigidBodyComponent> components;
+    private final LongIntMap pairIndices = new LongIntMap(256);
+    private long[] keys = new long[64];
+    private Actor[] actorsA = new Actor[64];
+    private Actor[] actorsB = new Actor[64];
+    private long[] handlesA = new long[64];
+    private long[] handlesB = new long[64];
+    private int[] lastSeen = new int[64];
+    private int count;
+    private int step;
+
+    ContactTracker(Map<CollisionObject, RigidBodyComponent> components) {
+        this.components = components;
+    }
+
+    void update(Dispatcher dispatcher, EventChannel<ContactEvent> channel) {
+        step++;
+
+        for (int i = 0; i < dispatcher.getNumManifolds(); i++) {
+            PersistentManifold manifold = dispatcher.getManifoldByIndexInternal(i);
+
+            CollisionObject body0 = (CollisionObject) manifold.getBody0();
+            CollisionObject body1 = (CollisionObject) manifold.getBody1();
+            if(!(body0.getUserPointer() instanceof Actor actor0) || !(body1.getUserPointer() instanceof Actor actor1)) continue;
+
+            //The body with the lower id is always a, so the key and the event don't depend on manifold order
+            int id0 = body0.getBroadphaseHandle().getUid();
+            int id1 = body1.getBroadphaseHandle().getUid();
+            boolean swap = id0 > id1;
+            long key = swap ? pack(id1, id0) : pack(id0, id1);
+            int index = pairIndices.get(key, -1);
+
+            //Nothing in a pair that is asleep can move, it stays in contact without a Stay event every step
+            if(index != -1 && resting(body0) && resting(body1)) {
+                lastSeen[index] = step;
+                continue;
+            }
+
+            //Manifolds keep points up to the breaking threshold apart. A pair begins touching once a point penetrates and
+            //only ends once the manifold has no points left, so resting contacts hovering around 0 don't flap
+            boolean touching = index != -1;
+            ManifoldPoint deepest = null;
+            int contacts = 0;
+            float impulse = 0;
+            for (int p = 0; p < manifold.getNumContacts(); p++) {
+                ManifoldPoint point = manifold.getContactPoint(p);
+                if(!touching && point.getDistance() > 0) continue;
+
+                contacts++;
+                impulse += point.appliedImpulse;
+                if(deepest == null || point.getDistance() < deepest.getDistance()) deepest = point;
+            }
+            if(contacts == 0) continue;
+
+            Actor a = swap ? actor1 : actor0;
+            Actor b = swap ? actor0 : actor1;
+
+            ContactEvent.Type type;
+            if(index == -1) {
+                index = add(key, a, b, handle(swap ? body1 : body0), handle(swap ? body0 : body1));
+                type = ContactEvent.Type.Begin;
+            }
+            else if(lastSeen[index] == step) {
+                //Compound shapes can produce several manifolds per pair, the first one is reported
+                continue;
+            }
+            else {
+                type = ContactEvent.Type.Stay;
+            }
+            lastSeen[index] = step;
+
+            long sequence = channel.claim();
+            if(sequence == -1) continue;
+
+            ContactEvent event = channel.get(sequence);
+            event.set(type, a, b, handlesA[index], handlesB[index], contacts, impulse);
+            //normalWorldOnB points from body1 towards body0
+            if(swap) {
+                event.point().set(deepest.positionWorldOnA.x, deepest.positionWorldOnA.y, deepest.positionWorldOnA.z);
+                event.normal().set(-deepest.normalWorldOnB.x, -deepest.normalWorldOnB.y, -deepest.normalWorldOnB.z);
+            }
+            else {
+                event.point().set(deepest.positionWorldOnB.x, deepest.positionWorldOnB.y, deepest.positionWorldOnB.z);
+                event.normal().set(deepest.normalWorldOnB.x, deepest.normalWorldOnB.y, deepest.normalWorldOnB.z);
+            }
+            channel.publish(sequence);
+        }
+
+        //Backwards, so the pair swapped into a removed slot has already been checked
+        for (int i = count - 1; i >= 0; i--) {
+            if(lastSeen[i] == step) continue;
+
+            long sequence = channel.claim();
+            if(sequence != -1) {
+                channel.get(sequence).set(ContactEvent.Type.End, actorsA[i], actorsB[i], handlesA[i], handlesB[i], 0, 0);
+                channel.publish(sequence);
+            }
+            removeAt(i);
+        }
+    }
+
+    private static boolean resting(CollisionObject body) {
+        return body.isStaticOrKinematicObject() || !body.isActive();
+    }
+
+    //0 for bodies added to the world directly, their Actors can only be checked for being alive
+    private long handle(CollisionObject body) {
+        RigidBodyComponent rigidBodyComponent = components.get(body);
+        return rigidBodyComponent == null ? 0 : rigidBodyComponent.handle;
+    }
+
+    private static long pack(int low, int high) {
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    private int add(long key, Actor a, Actor b, long handleA, long handleB) {
+        if(count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            actorsA = Arrays.copyOf(actorsA, capacity);
+            actorsB = Arrays.copyOf(actorsB, capacity);
+            handlesA = Arrays.copyOf(handlesA, capacity);
+            handlesB = Arrays.copyOf(handlesB, capacity);
+            lastSeen = Arrays.copyOf(lastSeen, capacity);
+        }
+
+        int index = count++;
+        keys[index] = key;
+        actorsA[index] = a;
+        actorsB[index] = b;
+        handlesA[index] = handleA;
+        handlesB[index] = handleB;
+        pairIndices.put(key, index);
+        return index;
+    }
+
+    private void removeAt(int index) {
+        pairIndices.remove(keys[index]);
+
+        int last = --count;
+        if(index != last) {
+            keys[index] = keys[last];
+            actorsA[index] = actorsA[last];
+            actorsB[index] = actorsB[last];
+            handlesA[index] = handlesA[last];
+            handlesB[index] = handlesB[last];
+            lastSeen[index] = lastSeen[last];
+            pairIndices.put(keys[index], index);
+        }
+        actorsA[last] = null;
+        actorsB[last] = null;
+    }
+}
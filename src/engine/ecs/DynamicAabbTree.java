@@ -0,0 +1,452 @@
+package engine.ecs;
+
+import org.joml.FrustumIntersection;
+
+import java.util.Arrays;
+
+//Incrementally balanced bounding volume hierarchy. Leaves store a fattened AABB so small movements don't touch the tree,
+//only a leaf that leaves its fat AABB is removed and reinserted. Nodes live in flat arrays, a proxy ID is a leaf's node index
+public class DynamicAabbTree {
+    public static final int NULL = -1;
+
+    public interface Visitor {
+        //Return false to stop the query
+        boolean visit(int proxy);
+    }
+
+    public interface RayVisitor {
+        //distance is where the ray enters the proxy's fat AABB. Return the new maximum distance, 0 stops the query
+        float visit(int proxy, float distance);
+    }
+
+    private final float margin;
+
+    private float[] minX, minY, minZ, maxX, maxY, maxZ;
+    private int[] parent, child1, child2, height;
+    private Object[] userData;
+    private int capacity, nodeCount;
+    private int freeList = NULL;
+    private int root = NULL;
+
+    public DynamicAabbTree(float margin) {
+        this.margin = margin;
+        resize(16);
+    }
+
+    public DynamicAabbTree() {
+        this(0.1f);
+    }
+
+    private void resize(int newCapacity) {
+        minX = Arrays.copyOf(minX == null ? new float[0] : minX, newCapacity);
+        minY = Arrays.copyOf(minY == null ? new float[0] : minY, newCapacity);
+        minZ = Arrays.copyOf(minZ == null ? new float[0] : minZ, newCapacity);
+        maxX = Arrays.copyOf(maxX == null ? new float[0] : maxX, newCapacity);
+        maxY = Arrays.copyOf(maxY == null ? new float[0] : maxY, newCapacity);
+        maxZ = Arrays.copyOf(maxZ == null ? new float[0] : maxZ, newCapacity);
+        parent = Arrays.copyOf(parent == null ? new int[0] : parent, newCapacity);
+        child1 = Arrays.copyOf(child1 == null ? new int[0] : child1, newCapacity);
+        child2 = Arrays.copyOf(child2 == null ? new int[0] : child2, newCapacity);
+        height = Arrays.copyOf(height == null ? new int[0] : height, newCapacity);
+        userData = Arrays.copyOf(userData == null ? new Object[0] : userData, newCapacity);
+
+        //Chain the new nodes into the free list, parent doubles as the next pointer
+        for (int i = newCapacity - 1; i >= capacity; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+        capacity = newCapacity;
+    }
+
+    private int allocateNode() {
+        if(freeList == NULL) resize(capacity * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        userData[node] = null;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        userData[node] = null;
+        freeList = node;
+        nodeCount--;
+    }
+
+    public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Object userData) {
+        int proxy = allocateNode();
+        setFat(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        this.userData[proxy] = userData;
+        insertLeaf(proxy);
+        return proxy;
+    }
+
+    public void destroyProxy(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+    }
+
+    //Returns true when the proxy had to be reinserted, false when the new AABB still fits inside its fat AABB
+    public boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if(this.minX[proxy] <= minX && this.minY[proxy] <= minY && this.minZ[proxy] <= minZ &&
+                this.maxX[proxy] >= maxX && this.maxY[proxy] >= maxY && this.maxZ[proxy] >= maxZ) return false;
+
+        removeLeaf(proxy);
+        setFat(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    private void setFat(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        this.minX[node] = minX - margin;
+        this.minY[node] = minY - margin;
+        this.minZ[node] = minZ - margin;
+        this.maxX[node] = maxX + margin;
+        this.maxY[node] = maxY + margin;
+        this.maxZ[node] = maxZ + margin;
+    }
+
+    public Object getUserData(int proxy) {
+        return proxy >= 0 && proxy < capacity ? userData[proxy] : null;
+    }
+
+    //Node indices are below this, internal and free nodes have no user data
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getProxyCount() {
+        return (nodeCount + 1) / 2;
+    }
+
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL;
+    }
+
+    private static float area(float dx, float dy, float dz) {
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private float area(int node) {
+        return area(maxX[node] - minX[node], maxY[node] - minY[node], maxZ[node] - minZ[node]);
+    }
+
+    private float unionArea(int a, int b) {
+        return area(
+                Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]),
+                Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]),
+                Math.max(maxZ[a], maxZ[b]) - Math.min(minZ[a], minZ[b])
+        );
+    }
+
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        minZ[node] = Math.min(minZ[a], minZ[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+        maxZ[node] = Math.max(maxZ[a], maxZ[b]);
+    }
+
+    private void insertLeaf(int leaf) {
+        if(root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        //Walk down picking the child with the lowest surface area cost, stop when making a new parent here is cheaper
+        int index = root;
+        while (!isLeaf(index)) {
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            float cost = 2f * combinedArea;
+            float inheritanceCost = 2f * (combinedArea - area);
+
+            int c1 = child1[index], c2 = child2[index];
+            float cost1 = unionArea(leaf, c1) + inheritanceCost - (isLeaf(c1) ? 0 : area(c1));
+            float cost2 = unionArea(leaf, c2) + inheritanceCost - (isLeaf(c2) ? 0 : area(c2));
+
+            if(cost < cost1 && cost < cost2) break;
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        if(oldParent == NULL) root = newParent;
+        else if(child1[oldParent] == sibling) child1[oldParent] = newParent;
+        else child2[oldParent] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if(leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        if(grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(oldParent);
+            return;
+        }
+
+        if(child1[grandParent] == oldParent) child1[grandParent] = sibling;
+        else child2[grandParent] = sibling;
+        parent[sibling] = grandParent;
+        freeNode(oldParent);
+
+        refitAncestors(grandParent);
+    }
+
+    private void refitAncestors(int index) {
+        while (index != NULL) {
+            index = balance(index);
+
+            int c1 = child1[index], c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+
+            index = parent[index];
+        }
+    }
+
+    //Rotates a grandchild up when the subtree under a is imbalanced, returns the subtree's new root
+    private int balance(int a) {
+        if(isLeaf(a) || height[a] < 2) return a;
+
+        int b = child1[a], c = child2[a];
+        int balance = height[c] - height[b];
+
+        if(balance > 1) {
+            int f = child1[c], g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if(height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            }
+            else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if(balance < -1) {
+            int d = child1[b], e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if(height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            }
+            else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if(node == NULL) root = newChild;
+        else if(child1[node] == oldChild) child1[node] = newChild;
+        else child2[node] = newChild;
+    }
+
+    //A depth first walk never holds more than height + 1 nodes
+    private int[] newStack() {
+        return new int[root == NULL ? 1 : height[root] + 2];
+    }
+
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Visitor visitor) {
+        if(root == NULL) return;
+
+        int[] stack = newStack();
+        int size = 0;
+        stack[size++] = root;
+
+        while (size > 0) {
+            int node = stack[--size];
+            if(this.minX[node] > maxX || this.maxX[node] < minX ||
+                    this.minY[node] > maxY || this.maxY[node] < minY ||
+                    this.minZ[node] > maxZ || this.maxZ[node] < minZ) continue;
+
+            if(isLeaf(node)) {
+                if(!visitor.visit(node)) return;
+            }
+            else {
+                stack[size++] = child1[node];
+                stack[size++] = child2[node];
+            }
+        }
+    }
+
+    public void querySphere(float x, float y, float z, float radius, Visitor visitor) {
+        if(root == NULL) return;
+
+        int[] stack = newStack();
+        int size = 0;
+        stack[size++] = root;
+        float radiusSquared = radius * radius;
+
+        while (size > 0) {
+            int node = stack[--size];
+            if(distanceSquared(node, x, y, z) > radiusSquared) continue;
+
+            if(isLeaf(node)) {
+                if(!visitor.visit(node)) return;
+            }
+            else {
+                stack[size++] = child1[node];
+                stack[size++] = child2[node];
+            }
+        }
+    }
+
+    private float distanceSquared(int node, float x, float y, float z) {
+        float dx = Math.max(Math.max(minX[node] - x, 0f), x - maxX[node]);
+        float dy = Math.max(Math.max(minY[node] - y, 0f), y - maxY[node]);
+        float dz = Math.max(Math.max(minZ[node] - z, 0f), z - maxZ[node]);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    //Subtrees entirely inside the frustum are reported without testing their nodes again
+    public void queryFrustum(FrustumIntersection frustum, Visitor visitor) {
+        if(root == NULL) return;
+
+        int[] stack = newStack();
+        boolean[] inside = new boolean[stack.length];
+        int size = 0;
+        stack[size++] = root;
+
+        while (size > 0) {
+            size--;
+            int node = stack[size];
+            boolean nodeInside = inside[size];
+
+            if(!nodeInside) {
+                int result = frustum.intersectAab(minX[node], minY[node], minZ[node], maxX[node], maxY[node], maxZ[node]);
+                //Anything else is the index of the plane that culled the box
+                if(result != FrustumIntersection.INSIDE && result != FrustumIntersection.INTERSECT) continue;
+                nodeInside = result == FrustumIntersection.INSIDE;
+            }
+
+            if(isLeaf(node)) {
+                if(!visitor.visit(node)) return;
+            }
+            else {
+                inside[size] = nodeInside;
+                stack[size++] = child1[node];
+                inside[size] = nodeInside;
+                stack[size++] = child2[node];
+            }
+        }
+    }
+
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance, RayVisitor visitor) {
+        if(root == NULL) return;
+
+        //A huge reciprocal instead of infinity, 0 * infinity would be NaN for a ray starting on a box's face
+        float invX = directionX == 0 ? 1e30f : 1f / directionX, invY = directionY == 0 ? 1e30f : 1f / directionY, invZ = directionZ == 0 ? 1e30f : 1f / directionZ;
+
+        int[] stack = newStack();
+        int size = 0;
+        stack[size++] = root;
+
+        while (size > 0) {
+            int node = stack[--size];
+
+            float distance = rayDistance(node, originX, originY, originZ, invX, invY, invZ, maxDistance);
+            if(distance < 0) continue;
+
+            if(isLeaf(node)) {
+                maxDistance = visitor.visit(node, distance);
+                if(maxDistance <= 0) return;
+            }
+            else {
+                stack[size++] = child1[node];
+                stack[size++] = child2[node];
+            }
+        }
+    }
+
+    //Slab test, returns the entry distance or -1 when the ray misses the node within maxDistance
+    private float rayDistance(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+        float t1 = (minX[node] - ox) * invX, t2 = (maxX[node] - ox) * invX;
+        float near = Math.min(t1, t2), far = Math.max(t1, t2);
+
+        t1 = (minY[node] - oy) * invY;
+        t2 = (maxY[node] - oy) * invY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        t1 = (minZ[node] - oz) * invZ;
+        t2 = (maxZ[node] - oz) * invZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        near = Math.max(near, 0f);
+        if(near > far || near > maxDistance) return -1;
+        return near;
+    }
+}
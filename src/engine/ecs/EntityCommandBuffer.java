@@ -0,0 +1,213 @@
+package engine.ecs;
+
+import engine.SkyRuntimeException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//Records structural changes so they can be made while systems are iterating or running on other threads.
+//Each thread records into its own buffer (ArchetypeStorage.getCommandBuffer()) and the Scene plays them back at sync points.
+//Actors are recorded by handle, so commands for an Actor destroyed (and maybe reused) before playback are dropped
+public class EntityCommandBuffer {
+    private enum CommandType {
+        Create,
+        Destroy,
+        Add,
+        Remove
+    }
+
+    private final ArchetypeStorage storage;
+    private CommandType[] types = new CommandType[64];
+    private long[] handles = new long[64];
+    //Only for Actors created through a command buffer, they get their handle on playback
+    private Actor[] pending = new Actor[64];
+    private Object[] payloads = new Object[64];
+    private int size;
+
+    EntityCommandBuffer(ArchetypeStorage storage) {
+        this.storage = storage;
+    }
+
+    //The returned Actor can be handed to further commands right away, but it only joins the Scene on playback.
+    //It is dropped if its parent is destroyed first
+    public synchronized Actor createActor(Actor parent, String name, Object... components) {
+        if(parent == null) throw new SkyRuntimeException("Actors created through a command buffer need a parent");
+        if(!parent.isPending() && parent.getStorage() != storage) throw new SkyRuntimeException("The parent of " + name + " is not in this storage");
+
+        Actor actor = storage.newPendingActor(name);
+        record(CommandType.Create, actor, parent.isPending() ? parent : parent.getHandle());
+        for(Object component : components) {
+            record(CommandType.Add, actor, component);
+        }
+        return actor;
+    }
+
+    public synchronized void destroyActor(Actor actor) {
+        record(CommandType.Destroy, actor, null);
+    }
+
+    public synchronized void add(Actor actor, Object component) {
+        record(CommandType.Add, actor, component);
+    }
+
+    public synchronized void remove(Actor actor, Class<?> clazz) {
+        record(CommandType.Remove, actor, clazz);
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    //Commands for Actors that are already destroyed or belong to another storage are never recorded
+    private void record(CommandType type, Actor actor, Object payload) {
+        if(!actor.isPending() && actor.getStorage() != storage) return;
+
+        if(size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            handles = Arrays.copyOf(handles, size * 2);
+            pending = Arrays.copyOf(pending, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+        }
+
+        types[size] = type;
+        handles[size] = actor.getHandle();
+        pending[size] = actor.isPending() ? actor : null;
+        payloads[size] = payload;
+        size++;
+    }
+
+    //Folds this buffer's commands into the per-Actor change sets of a playback and empties the buffer. Handles are
+    //resolved here, stale ones are dropped along with their commands
+    synchronized void drainInto(Playback playback) {
+        for (int i = 0; i < size; i++) {
+            Actor actor = pending[i] != null ? pending[i] : storage.getActor(handles[i]);
+            if(actor == null) {
+                pending[i] = null;
+                payloads[i] = null;
+                continue;
+            }
+            Changes changes = playback.getChanges(actor);
+
+            switch (types[i]) {
+                case Create -> {
+                    changes.create = true;
+                    changes.parent = payloads[i] instanceof Actor parent ? parent : storage.getActor((Long) payloads[i]);
+                    //Its parent was destroyed since, so the Actor is never created
+                    if(changes.parent == null) changes.destroy = true;
+                }
+                case Destroy -> changes.destroy = true;
+                case Add -> {
+                    changes.added.put(payloads[i].getClass(), payloads[i]);
+                    changes.removed.remove(payloads[i].getClass());
+                }
+                case Remove -> {
+                    changes.added.remove((Class<?>) payloads[i]);
+                    changes.removed.add((Class<?>) payloads[i]);
+                }
+            }
+
+            pending[i] = null;
+            payloads[i] = null;
+        }
+        size = 0;
+    }
+
+    private static class Changes {
+        private final Actor actor;
+        private boolean create, destroy;
+        private Actor parent;
+        private Map<Class<?>, Object> added = new LinkedHashMap<>();
+        private Set<Class<?>> removed = new LinkedHashSet<>();
+        private Archetype target;
+
+        private Changes(Actor actor) {
+            this.actor = actor;
+        }
+    }
+
+    //Applies every recorded command at once. Each Actor moves straight to its final Archetype, and every
+    //destination Archetype grows once for all the Actors entering it
+    static class Playback {
+        private final ArchetypeStorage storage;
+        private final Map<Actor, Changes> changesByActor = new IdentityHashMap<>();
+        private final List<Changes> order = new ArrayList<>();
+        private final Map<Archetype, Integer> incoming = new IdentityHashMap<>();
+
+        Playback(ArchetypeStorage storage) {
+            this.storage = storage;
+        }
+
+        private Changes getChanges(Actor actor) {
+            Changes changes = changesByActor.get(actor);
+            if(changes == null) {
+                changes = new Changes(actor);
+                changesByActor.put(actor, changes);
+                order.add(changes);
+            }
+            return changes;
+        }
+
+        void apply() {
+            if(order.isEmpty()) return;
+
+            for(Changes changes : order) {
+                Actor actor = changes.actor;
+                if(changes.destroy) continue;
+                if(!changes.create && actor.getStorage() != storage) continue;
+
+                Archetype target = changes.create ? storage.getEmptyArchetype() : actor.getArchetype();
+                for(Class<?> clazz : changes.removed) {
+                    if(target.has(clazz)) target = storage.getArchetypeWithout(target, clazz);
+                }
+                for(Class<?> clazz : changes.added.keySet()) {
+                    if(!target.has(clazz)) target = storage.getArchetypeWith(target, clazz);
+                }
+
+                changes.target = target;
+                if(changes.create || target != actor.getArchetype()) incoming.merge(target, 1, Integer::sum);
+            }
+
+            for(Map.Entry<Archetype, Integer> entry : incoming.entrySet()) {
+                entry.getKey().ensureCapacity(entry.getKey().size() + entry.getValue());
+            }
+
+            for(Changes changes : order) {
+                if(changes.target == null) continue;
+
+                Actor actor = changes.actor;
+                if(changes.create) storage.insert(actor, changes.target);
+                else if(changes.target != actor.getArchetype()) storage.move(actor, changes.target);
+
+                for(Object component : changes.added.values()) {
+                    actor.add(component);
+                }
+            }
+
+            //Parents are linked once every created Actor exists, so an Actor may be parented to one created in the same batch.
+            //A parent that was created and destroyed in the same batch never existed, neither does its child
+            for(Changes changes : order) {
+                if(!changes.create || changes.target == null) continue;
+
+                if(changes.parent.getStorage() == storage) changes.parent.addActor(changes.actor);
+                else storage.destroy(changes.actor);
+            }
+
+            for(Changes changes : order) {
+                if(!changes.destroy) continue;
+
+                if(changes.actor.getStorage() == storage) storage.destroy(changes.actor);
+                else if(changes.create && changes.target == null) storage.recyclePending(changes.actor);
+            }
+
+            changesByActor.clear();
+            order.clear();
+            incoming.clear();
+        }
+    }
+}
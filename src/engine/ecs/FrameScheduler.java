@@ -0,0 +1,131 @@
+package engine.ecs;
+
+import engine.ExceptionUtil;
+import engine.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//Spreads big but non urgent work (nav data, procedural meshes, inventories, ...) over frames. Every Scene.tick() steps
+//tasks, highest priority first, until the frame budget is used up. A task gains priority every frame it doesn't get to
+//run, so low priority work still finishes while higher priority work keeps arriving
+public class FrameScheduler {
+    public interface Task {
+        //Does one small slice of the work and returns true once there is nothing left to do.
+        //A step that has started always runs to its end, so a slice should stay well under the budget
+        boolean step();
+    }
+
+    public static class Handle {
+        private final Task task;
+        private final int priority;
+        private int age;
+        private boolean stepped, done, cancelled, failed;
+
+        private Handle(Task task, int priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        //Priority plus the aging picked up while waiting, this is what the tasks are ordered by
+        public int getEffectivePriority() {
+            return priority + age;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        //The task is dropped before its next step
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static final Comparator<Handle> order = Comparator.comparingInt(Handle::getEffectivePriority).reversed();
+
+    private final List<Handle> tasks = new ArrayList<>();
+    private final List<Handle> submitted = new ArrayList<>();
+    private long budgetNanos = 2_000_000;
+    private int agingPerFrame = 1;
+
+    public Handle submit(Task task, int priority) {
+        Handle handle = new Handle(task, priority);
+        submitted.add(handle);
+        return handle;
+    }
+
+    public Handle submit(Task task) {
+        return submit(task, 0);
+    }
+
+    public void setBudgetMillis(float budgetMillis) {
+        this.budgetNanos = (long) (budgetMillis * 1_000_000);
+    }
+
+    public float getBudgetMillis() {
+        return budgetNanos / 1_000_000f;
+    }
+
+    //How much priority a waiting task gains per frame it doesn't get to step, 0 turns starvation protection off
+    public void setAgingPerFrame(int agingPerFrame) {
+        this.agingPerFrame = agingPerFrame;
+    }
+
+    public int getPendingCount() {
+        return tasks.size() + submitted.size();
+    }
+
+    //Main thread only, while no system is running. Tasks submitted from inside a step wait for the next frame
+    void update() {
+        tasks.addAll(submitted);
+        submitted.clear();
+        if(tasks.isEmpty()) return;
+
+        //Stable sort, equal priorities keep submission order
+        tasks.sort(order);
+
+        long start = System.nanoTime();
+        boolean first = true;
+
+        for (int i = 0; i < tasks.size(); i++) {
+            Handle handle = tasks.get(i);
+
+            //The first step always runs so work still moves forward with a tiny budget
+            while (!handle.cancelled && !handle.done && (first || System.nanoTime() - start < budgetNanos)) {
+                first = false;
+                handle.stepped = true;
+                try {
+                    handle.done = handle.task.step();
+                } catch (RuntimeException e) {
+                    Logger.error(FrameScheduler.class, "Time sliced task failed\n" + ExceptionUtil.exceptionToString(e));
+                    handle.failed = true;
+                    handle.done = true;
+                }
+            }
+
+            if(System.nanoTime() - start >= budgetNanos) break;
+        }
+
+        tasks.removeIf(handle -> handle.done || handle.cancelled);
+        for (int i = 0; i < tasks.size(); i++) {
+            Handle handle = tasks.get(i);
+            if(handle.stepped) handle.age = 0;
+            else handle.age += agingPerFrame;
+            handle.stepped = false;
+        }
+    }
+}
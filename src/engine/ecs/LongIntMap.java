@@ -0,0 +1,115 @@
+package engine.ecs;
+
+import java.util.Arrays;
+
+//Open addressing long -> int map (linear probing, backward shift deletion). No boxing and no entry objects,
+//so hot paths that key on packed ids don't allocate once the table has grown
+class LongIntMap {
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    LongIntMap(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(4, capacity * 2 - 1)) << 1;
+        keys = new long[tableSize];
+        values = new int[tableSize];
+        used = new boolean[tableSize];
+        mask = tableSize - 1;
+    }
+
+    LongIntMap() {
+        this(16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if(keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int get(long key, int missing) {
+        int slot = find(key);
+        return slot == -1 ? missing : values[slot];
+    }
+
+    boolean containsKey(long key) {
+        return find(key) != -1;
+    }
+
+    void put(long key, int value) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if(keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size * 2 > keys.length) grow();
+    }
+
+    void remove(long key) {
+        int slot = find(key);
+        if(slot == -1) return;
+
+        used[slot] = false;
+        size--;
+
+        //Pull later entries of the probe chain back into the hole, so lookups never need tombstones
+        int hole = slot;
+        slot = (slot + 1) & mask;
+        while (used[slot]) {
+            int home = hash(keys[slot]) & mask;
+            boolean movable = hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+            if(movable) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                used[hole] = true;
+                used[slot] = false;
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if(oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -2,7 +2,7 @@ package engine.ecs;
 
 import engine.graphics.Material;
 
-@ComponentArray(mask = 1 << 8)
+@ComponentArray
 public class MaterialComponent {
     public Material material;
 
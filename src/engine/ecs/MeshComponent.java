@@ -3,8 +3,11 @@ package engine.ecs;
 import engine.graphics.*;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-@ComponentArray(mask = 1 << 0)
+@ComponentArray
 public class MeshComponent {
     public Buffer[] transformsBuffers;
     public Buffer[] sceneDescBuffers;
@@ -75,5 +78,20 @@ public class MeshComponent {
         finalized = true;
     }
 
+    //Frees the buffers, for meshes that go away before their parent Disposable does
+    public void close() {
+        List<Disposable> resources = new ArrayList<>();
+        addResources(resources);
+        Disposable.disposeTogether(resources);
+    }
+
+    //What close() frees, for freeing the resources of many components together
+    void addResources(List<Disposable> resources) {
+        resources.add(vertexBuffer);
+        resources.add(indexBuffer);
+        resources.addAll(Arrays.asList(transformsBuffers));
+        resources.addAll(Arrays.asList(sceneDescBuffers));
+    }
+
 
 }
@@ -3,7 +3,7 @@ package engine.ecs;
 import engine.SkyRuntimeException;
 import engine.graphics.*;
 
-@ComponentArray(mask = 1 << 2)
+@ComponentArray
 public class MeshListComponent {
     public Buffer[] transformsBuffers;
     public Buffer[] sceneDescBuffers;
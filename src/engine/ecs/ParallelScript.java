@@ -0,0 +1,14 @@
+package engine.ecs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//Marks a Script that only reads and writes its own Actor's components in init, update and fixedUpdate.
+//Marked scripts are run in parallel batches on the JobSystem after the unmarked ones, which keep running one at a time.
+//Structural changes (adding/removing components or Actors) must go through Scene.getCommandBuffer()
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ParallelScript {
+}
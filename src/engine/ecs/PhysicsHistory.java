@@ -0,0 +1,124 @@
+package engine.ecs;
+
+import java.util.Arrays;
+
+//The PhysicsStats of the last frames in a ring, with histograms of their physics time and substeps that are kept up to
+//date as frames come and go. A spiral of death shows up as frames piling into the top substep buckets while
+//getDroppingFrames() climbs: every step takes longer than the time it simulates, so each frame owes more steps
+public class PhysicsHistory {
+    //Bucket 0 holds frames under 0.25ms, every further bucket twice the limit of the one before, the last everything else
+    public static final int TIME_BUCKETS = 10;
+    private static final long FIRST_BUCKET_NANOS = 250_000;
+    //Frames with this many substeps or more share the last substep bucket
+    public static final int SUBSTEP_BUCKETS = 16;
+
+    private final long[] totalNanos;
+    private final int[] substeps;
+    private final int[] droppedSteps;
+    private int next, count;
+
+    private final int[] timeHistogram = new int[TIME_BUCKETS];
+    private final int[] substepHistogram = new int[SUBSTEP_BUCKETS];
+    private int droppingFrames;
+
+    public PhysicsHistory(int frames) {
+        totalNanos = new long[frames];
+        substeps = new int[frames];
+        droppedSteps = new int[frames];
+    }
+
+    void add(PhysicsStats stats) {
+        if(count == totalNanos.length) forget(next);
+        else count++;
+
+        totalNanos[next] = stats.getTotalNanos();
+        substeps[next] = stats.getSubsteps();
+        droppedSteps[next] = stats.getDroppedSteps();
+        timeHistogram[timeBucket(totalNanos[next])]++;
+        substepHistogram[Math.min(substeps[next], SUBSTEP_BUCKETS - 1)]++;
+        if(droppedSteps[next] > 0) droppingFrames++;
+
+        next = (next + 1) % totalNanos.length;
+    }
+
+    private void forget(int i) {
+        timeHistogram[timeBucket(totalNanos[i])]--;
+        substepHistogram[Math.min(substeps[i], SUBSTEP_BUCKETS - 1)]--;
+        if(droppedSteps[i] > 0) droppingFrames--;
+    }
+
+    private static int timeBucket(long nanos) {
+        int bucket = 0;
+        for (long limit = FIRST_BUCKET_NANOS; nanos >= limit && bucket < TIME_BUCKETS - 1; limit *= 2) bucket++;
+        return bucket;
+    }
+
+    //Frames in the window, up to the size it was made with
+    public int getFrameCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return totalNanos.length;
+    }
+
+    //Frames whose total physics time falls in the bucket
+    public int getTimeBucket(int bucket) {
+        return timeHistogram[bucket];
+    }
+
+    //Exclusive upper end of a time bucket, Long.MAX_VALUE for the last one
+    public static long getTimeBucketLimitNanos(int bucket) {
+        return bucket == TIME_BUCKETS - 1 ? Long.MAX_VALUE : FIRST_BUCKET_NANOS << bucket;
+    }
+
+    //Frames that took this many substeps, the last bucket counts SUBSTEP_BUCKETS - 1 or more
+    public int getSubstepBucket(int substeps) {
+        return substepHistogram[Math.min(substeps, SUBSTEP_BUCKETS - 1)];
+    }
+
+    //Frames that had to drop steps
+    public int getDroppingFrames() {
+        return droppingFrames;
+    }
+
+    //0 is the latest frame
+    public long getTotalNanos(int framesAgo) {
+        return totalNanos[index(framesAgo)];
+    }
+
+    public int getSubsteps(int framesAgo) {
+        return substeps[index(framesAgo)];
+    }
+
+    public int getDroppedSteps(int framesAgo) {
+        return droppedSteps[index(framesAgo)];
+    }
+
+    private int index(int framesAgo) {
+        if(framesAgo < 0 || framesAgo >= count) throw new IndexOutOfBoundsException(framesAgo);
+        return Math.floorMod(next - 1 - framesAgo, totalNanos.length);
+    }
+
+    public long getMaxNanos() {
+        long max = 0;
+        for (int i = 0; i < count; i++) max = Math.max(max, totalNanos[i]);
+        return max;
+    }
+
+    public long getAverageNanos() {
+        if(count == 0) return 0;
+
+        long sum = 0;
+        for (int i = 0; i < count; i++) sum += totalNanos[i];
+        return sum / count;
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+        Arrays.fill(timeHistogram, 0);
+        Arrays.fill(substepHistogram, 0);
+        droppingFrames = 0;
+    }
+}
@@ -0,0 +1,205 @@
+package engine.ecs;
+
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.linearmath.Transform;
+import engine.SkyRuntimeException;
+
+import javax.vecmath.Vector3f;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+//Records everything that goes into a BulletSystem's simulation, see BulletSystem.startRecording(). PhysicsReplay plays
+//it back and checks that the bodies end up exactly where they did here.
+//Layout (little endian):
+//  int magic, int version, float gravity xyz
+//  events, each a byte tag followed by:
+//      Add: int id, collider (see Collider.write()), float mass, float friction, byte rotate, transform
+//      State: int id, linear velocity xyz, angular velocity xyz, int activationState, float deactivationTime
+//      Remove: int id
+//      Command: int id, byte BodyCommand.Type ordinal, float xyz
+//      Step: float timestep
+//      End: int bodyCount, bodyCount * (int id, transform)
+//Transforms are the basis row by row followed by the origin, 12 floats. Bodies already in the world when recording
+//starts are added with a State. Changes made to rigidBody or Physics.world directly aren't recorded
+public class PhysicsRecorder {
+    public static final int MAGIC = 0x534B5950; //SKYP
+    public static final int VERSION = 1;
+    static final byte ADD = 1, STATE = 2, REMOVE = 3, COMMAND = 4, STEP = 5, END = 6;
+    static final int TRANSFORM_BYTES = 12 * Float.BYTES;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private final Map<RigidBodyComponent, Integer> ids = new IdentityHashMap<>();
+    private int nextId;
+    private int steps;
+    private boolean finished;
+
+    private final Transform transformVM = new Transform();
+    private final Vector3f vectorVM = new Vector3f();
+
+    public int getStepCount() {
+        return steps;
+    }
+
+    //Once recording stopped, only a finished recording can be written or replayed
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void write(Path path) {
+        ByteBuffer data = getData();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        catch (IOException e) {
+            throw new SkyRuntimeException(e);
+        }
+    }
+
+    //A read only view of the recording
+    ByteBuffer getData() {
+        if(!finished) throw new SkyRuntimeException("Physics recording is still running");
+        return buffer.asReadOnlyBuffer().flip().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    //Every method below runs on the thread stepping the simulation, command() also on script threads
+    synchronized void start(Vector3f gravity) {
+        if(buffer.position() != 0) throw new SkyRuntimeException("A PhysicsRecorder can only record once");
+
+        ensureRemaining(Integer.BYTES * 2 + Float.BYTES * 3);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putFloat(gravity.x);
+        buffer.putFloat(gravity.y);
+        buffer.putFloat(gravity.z);
+    }
+
+    synchronized void add(RigidBodyComponent body) {
+        int id = nextId++;
+        ids.put(body, id);
+
+        ensureRemaining(1 + Integer.BYTES + body.collider.sizeOf() + Float.BYTES * 2 + 1 + TRANSFORM_BYTES);
+        buffer.put(ADD);
+        buffer.putInt(id);
+        body.collider.write(buffer);
+        buffer.putFloat(body.mass);
+        buffer.putFloat(body.rigidBody.getFriction());
+        buffer.put((byte) (body.rotate ? 1 : 0));
+        putTransform(body.rigidBody.getWorldTransform(transformVM));
+    }
+
+    synchronized void state(RigidBodyComponent body) {
+        RigidBody rigidBody = body.rigidBody;
+        ensureRemaining(1 + Integer.BYTES + Float.BYTES * 7 + Integer.BYTES);
+        buffer.put(STATE);
+        buffer.putInt(ids.get(body));
+        putVector(rigidBody.getLinearVelocity(vectorVM));
+        putVector(rigidBody.getAngularVelocity(vectorVM));
+        buffer.putInt(rigidBody.getActivationState());
+        buffer.putFloat(rigidBody.getDeactivationTime());
+    }
+
+    synchronized void remove(RigidBodyComponent body) {
+        Integer id = ids.remove(body);
+        if(id == null) return;
+
+        ensureRemaining(1 + Integer.BYTES);
+        buffer.put(REMOVE);
+        buffer.putInt(id);
+    }
+
+    synchronized void command(RigidBodyComponent body, BodyCommand.Type type, float x, float y, float z) {
+        Integer id = ids.get(body);
+        if(id == null) return;
+
+        ensureRemaining(1 + Integer.BYTES + 1 + Float.BYTES * 3);
+        buffer.put(COMMAND);
+        buffer.putInt(id);
+        buffer.put((byte) type.ordinal());
+        buffer.putFloat(x);
+        buffer.putFloat(y);
+        buffer.putFloat(z);
+    }
+
+    synchronized void step(float timestep) {
+        ensureRemaining(1 + Float.BYTES);
+        buffer.put(STEP);
+        buffer.putFloat(timestep);
+        steps++;
+    }
+
+    //The transforms every body in the simulation ended up with
+    synchronized void end(BodyTransforms transforms) {
+        ensureRemaining(1 + Integer.BYTES + transforms.count * (Integer.BYTES + TRANSFORM_BYTES));
+        buffer.put(END);
+
+        int countPosition = buffer.position();
+        int count = 0;
+        buffer.putInt(0);
+        for (int i = 0; i < transforms.count; i++) {
+            Integer id = ids.get(transforms.bodies[i]);
+            if(id == null) continue;
+
+            buffer.putInt(id);
+            putTransform(transforms.bodies[i].rigidBody.getWorldTransform(transformVM));
+            count++;
+        }
+        buffer.putInt(countPosition, count);
+
+        ids.clear();
+        finished = true;
+    }
+
+    private void putTransform(Transform transform) {
+        buffer.putFloat(transform.basis.m00);
+        buffer.putFloat(transform.basis.m01);
+        buffer.putFloat(transform.basis.m02);
+        buffer.putFloat(transform.basis.m10);
+        buffer.putFloat(transform.basis.m11);
+        buffer.putFloat(transform.basis.m12);
+        buffer.putFloat(transform.basis.m20);
+        buffer.putFloat(transform.basis.m21);
+        buffer.putFloat(transform.basis.m22);
+        putVector(transform.origin);
+    }
+
+    private void putVector(Vector3f vector) {
+        buffer.putFloat(vector.x);
+        buffer.putFloat(vector.y);
+        buffer.putFloat(vector.z);
+    }
+
+    static Transform getTransform(ByteBuffer buffer, Transform dest) {
+        dest.basis.m00 = buffer.getFloat();
+        dest.basis.m01 = buffer.getFloat();
+        dest.basis.m02 = buffer.getFloat();
+        dest.basis.m10 = buffer.getFloat();
+        dest.basis.m11 = buffer.getFloat();
+        dest.basis.m12 = buffer.getFloat();
+        dest.basis.m20 = buffer.getFloat();
+        dest.basis.m21 = buffer.getFloat();
+        dest.basis.m22 = buffer.getFloat();
+        dest.origin.x = buffer.getFloat();
+        dest.origin.y = buffer.getFloat();
+        dest.origin.z = buffer.getFloat();
+        return dest;
+    }
+
+    private void ensureRemaining(int bytes) {
+        if(buffer.remaining() >= bytes) return;
+
+        long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + bytes);
+        if(capacity > Integer.MAX_VALUE) throw new SkyRuntimeException("Physics recording is too large (" + capacity + " bytes)");
+
+        ByteBuffer grown = ByteBuffer.allocate((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+        grown.put(buffer.flip());
+        buffer = grown;
+    }
+}
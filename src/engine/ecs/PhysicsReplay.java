@@ -0,0 +1,402 @@
+package engine.ecs;
+
+import com.bulletphysics.dynamics.DynamicsWorld;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.linearmath.Transform;
+import engine.Logger;
+import engine.SkyRuntimeException;
+import engine.SystemState;
+import engine.Time;
+import engine.physics.Collider;
+import engine.physics.CollisionSnapshot;
+import engine.physics.Interface;
+import engine.physics.Physics;
+import org.joml.Matrix4f;
+
+import javax.vecmath.Vector3f;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//Plays a PhysicsRecorder recording back through a BulletSystem in a Scene of its own, without a Surface or renderer.
+//Every recorded step gets a frame of its own and is timed through the BulletSystem's PhysicsStats. At the end every
+//body's transform is compared bit for bit with the one it had when the recording stopped.
+//From the command line: PhysicsReplay <recording> [--repeat <n>] [--csv <file>], exits with 1 when a transform differs.
+//--repeat replays n times and reports the last one, the ones before warm up the JIT
+public class PhysicsReplay {
+    public static class Result {
+        private final long[] totalNanos, broadphaseNanos, narrowphaseNanos, solverNanos, syncNanos;
+        private final int bodyCount, mismatchCount;
+        private final float maxError;
+
+        private Result(long[][] steps, int stepCount, int bodyCount, int mismatchCount, float maxError) {
+            totalNanos = Arrays.copyOf(steps[0], stepCount);
+            broadphaseNanos = Arrays.copyOf(steps[1], stepCount);
+            narrowphaseNanos = Arrays.copyOf(steps[2], stepCount);
+            solverNanos = Arrays.copyOf(steps[3], stepCount);
+            syncNanos = Arrays.copyOf(steps[4], stepCount);
+            this.bodyCount = bodyCount;
+            this.mismatchCount = mismatchCount;
+            this.maxError = maxError;
+        }
+
+        public int getStepCount() {
+            return totalNanos.length;
+        }
+
+        //Everything the BulletSystem spent on the step, see PhysicsStats.getTotalNanos()
+        public long getStepNanos(int step) {
+            return totalNanos[step];
+        }
+
+        public long getBroadphaseNanos(int step) {
+            return broadphaseNanos[step];
+        }
+
+        public long getNarrowphaseNanos(int step) {
+            return narrowphaseNanos[step];
+        }
+
+        public long getSolverNanos(int step) {
+            return solverNanos[step];
+        }
+
+        public long getSyncNanos(int step) {
+            return syncNanos[step];
+        }
+
+        public long getTotalNanos() {
+            long sum = 0;
+            for(long nanos : totalNanos) sum += nanos;
+            return sum;
+        }
+
+        //Nearest rank, 0.5 is the median step, 1 the slowest
+        public long getPercentileNanos(double percentile) {
+            if(totalNanos.length == 0) return 0;
+
+            long[] sorted = totalNanos.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.clamp(rank - 1, 0, sorted.length - 1)];
+        }
+
+        //Bodies in the world when the recording stopped
+        public int getBodyCount() {
+            return bodyCount;
+        }
+
+        //Bodies whose transform differs from the recorded one in any bit, or that are missing from the replay
+        public int getMismatchCount() {
+            return mismatchCount;
+        }
+
+        //Largest difference of any basis or origin component
+        public float getMaxError() {
+            return maxError;
+        }
+
+        public boolean isIdentical() {
+            return mismatchCount == 0;
+        }
+
+        public void writeCsv(Path path) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+                writer.println("step,total_ns,broadphase_ns,narrowphase_ns,solver_ns,sync_ns");
+                for (int i = 0; i < totalNanos.length; i++) {
+                    writer.println(i + "," + totalNanos[i] + "," + broadphaseNanos[i] + "," + narrowphaseNanos[i] + "," + solverNanos[i] + "," + syncNanos[i]);
+                }
+            }
+            catch (IOException e) {
+                throw new SkyRuntimeException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d steps in %.2fms, median %.3fms, p95 %.3fms, p99 %.3fms, max %.3fms. %d bodies, %s",
+                    getStepCount(), getTotalNanos() / 1e6, getPercentileNanos(0.5) / 1e6, getPercentileNanos(0.95) / 1e6,
+                    getPercentileNanos(0.99) / 1e6, getPercentileNanos(1) / 1e6, bodyCount,
+                    isIdentical() ? "all identical" : mismatchCount + " differ (max error " + maxError + ")"
+            );
+        }
+    }
+
+    private static final BodyCommand.Type[] COMMAND_TYPES = BodyCommand.Type.values();
+
+    private final ByteBuffer buffer;
+    //Positions of the states and commands to apply before the next step, read again by the driver script
+    private final ByteBuffer events;
+    private int[] pending = new int[64];
+    private int pendingCount;
+
+    private final Scene scene = new Scene(null, "Physics replay");
+    private BulletSystem bulletSystem;
+    private RigidBodyComponent[] bodies = new RigidBodyComponent[64];
+    private Actor[] actors = new Actor[64];
+    private boolean structuralChanges;
+
+    private long[][] steps = new long[5][1024];
+    private int stepCount;
+    private final Vector3f vectorVM = new Vector3f();
+
+    private PhysicsReplay(ByteBuffer buffer) {
+        this.buffer = buffer;
+        events = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static Result run(PhysicsRecorder recorder) {
+        return run(recorder.getData());
+    }
+
+    public static Result run(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return run(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        catch (IOException e) {
+            throw new SkyRuntimeException(e);
+        }
+    }
+
+    private static Result run(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if(buffer.remaining() < Integer.BYTES * 2 || buffer.getInt() != PhysicsRecorder.MAGIC) throw new SkyRuntimeException("Not a physics recording");
+
+        int version = buffer.getInt();
+        if(version != PhysicsRecorder.VERSION) throw new SkyRuntimeException("Unsupported physics recording version " + version);
+
+        //The BulletSystem takes over the global world and snapshot, the replay gives them back
+        DynamicsWorld world = Physics.world;
+        CollisionSnapshot snapshot = Physics.snapshot;
+        boolean running = SystemState.running;
+        float deltaTime = Time.deltaTime;
+        PhysicsReplay replay = new PhysicsReplay(buffer);
+        try {
+            SystemState.running = true;
+            return replay.replay();
+        }
+        finally {
+            replay.scene.close();
+            Physics.world = world;
+            Physics.snapshot = snapshot;
+            SystemState.running = running;
+            Time.deltaTime = deltaTime;
+        }
+    }
+
+    private Result replay() {
+        bulletSystem = new BulletSystem();
+        bulletSystem.getSimulation().getWorld().setGravity(new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()));
+
+        Actor root = scene.newRootActor("Root");
+        scene.setRootActor(root);
+        scene.addSystem(bulletSystem);
+        root.addActor(scene.newActor("Replay", new ScriptComponent(new Driver())));
+
+        while (true) {
+            int position = buffer.position();
+            byte tag = buffer.get();
+            switch (tag) {
+                case PhysicsRecorder.ADD -> add();
+                case PhysicsRecorder.STATE -> {
+                    addPending(position);
+                    buffer.position(buffer.position() + Integer.BYTES + Float.BYTES * 7 + Integer.BYTES);
+                }
+                case PhysicsRecorder.COMMAND -> {
+                    addPending(position);
+                    buffer.position(buffer.position() + Integer.BYTES + 1 + Float.BYTES * 3);
+                }
+                case PhysicsRecorder.REMOVE -> remove(buffer.getInt());
+                case PhysicsRecorder.STEP -> step(buffer.getFloat());
+                case PhysicsRecorder.END -> {
+                    //Bodies added or removed after the last step, in a frame without one
+                    if(structuralChanges) tick(0);
+                    return verify();
+                }
+                default -> throw new SkyRuntimeException("Corrupt physics recording, unknown event " + tag + " at " + position);
+            }
+        }
+    }
+
+    private void add() {
+        int id = buffer.getInt();
+        Collider collider = Collider.read(buffer);
+        float mass = buffer.getFloat();
+        float friction = buffer.getFloat();
+        boolean rotate = buffer.get() != 0;
+        Transform start = PhysicsRecorder.getTransform(buffer, new Transform());
+
+        RigidBodyComponent body = new RigidBodyComponent(collider, mass, new Interface(friction), rotate);
+        body.startTransform = start;
+        Matrix4f matrix = new Matrix4f(
+                start.basis.m00, start.basis.m10, start.basis.m20, 0,
+                start.basis.m01, start.basis.m11, start.basis.m21, 0,
+                start.basis.m02, start.basis.m12, start.basis.m22, 0,
+                start.origin.x, start.origin.y, start.origin.z, 1
+        );
+        Actor actor = scene.newActor("Body " + id, new TransformComponent(matrix), body);
+        scene.getRootActor().addActor(actor);
+
+        if(id >= bodies.length) {
+            bodies = Arrays.copyOf(bodies, Math.max(id + 1, bodies.length * 2));
+            actors = Arrays.copyOf(actors, bodies.length);
+        }
+        bodies[id] = body;
+        actors[id] = actor;
+        structuralChanges = true;
+    }
+
+    private void remove(int id) {
+        scene.destroyActor(actors[id]);
+        bodies[id] = null;
+        actors[id] = null;
+        structuralChanges = true;
+    }
+
+    private void addPending(int position) {
+        if(pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = position;
+    }
+
+    //One frame that takes exactly one step of the given length, or none for 0
+    private void step(float timestep) {
+        tick(timestep);
+
+        PhysicsStats stats = bulletSystem.getStats();
+        if(stepCount == steps[0].length) {
+            for (int i = 0; i < steps.length; i++) steps[i] = Arrays.copyOf(steps[i], stepCount * 2);
+        }
+        steps[0][stepCount] = stats.getTotalNanos();
+        steps[1][stepCount] = stats.getBroadphaseNanos();
+        steps[2][stepCount] = stats.getNarrowphaseNanos();
+        steps[3][stepCount] = stats.getSolverNanos();
+        steps[4][stepCount] = stats.getSyncNanos();
+        stepCount++;
+    }
+
+    private void tick(float timestep) {
+        if(timestep > 0) bulletSystem.setTimestep(timestep);
+        Time.deltaTime = timestep;
+        scene.tick();
+        structuralChanges = false;
+        pendingCount = 0;
+    }
+
+    //Runs right before the step, after the bodies added since the last one are in the world, like the scripts that
+    //made the recorded calls
+    private class Driver extends Script {
+        @Override
+        public void init(Actor actor) {
+
+        }
+
+        @Override
+        public void update(Actor actor, Actor root) {
+
+        }
+
+        @Override
+        public void fixedUpdate(Actor actor, float timestep) {
+            for (int i = 0; i < pendingCount; i++) {
+                events.position(pending[i]);
+                byte tag = events.get();
+                RigidBodyComponent body = bodies[events.getInt()];
+                if(body == null) continue;
+
+                if(tag == PhysicsRecorder.STATE) applyState(body.rigidBody);
+                else body.command(COMMAND_TYPES[events.get()], events.getFloat(), events.getFloat(), events.getFloat());
+            }
+            pendingCount = 0;
+        }
+    }
+
+    private void applyState(RigidBody rigidBody) {
+        vectorVM.set(events.getFloat(), events.getFloat(), events.getFloat());
+        rigidBody.setLinearVelocity(vectorVM);
+        vectorVM.set(events.getFloat(), events.getFloat(), events.getFloat());
+        rigidBody.setAngularVelocity(vectorVM);
+        rigidBody.forceActivationState(events.getInt());
+        rigidBody.setDeactivationTime(events.getFloat());
+    }
+
+    private Result verify() {
+        int bodyCount = buffer.getInt();
+        int mismatchCount = 0;
+        float maxError = 0;
+        Transform recorded = new Transform(), replayed = new Transform();
+        float[] expected = new float[12], actual = new float[12];
+
+        for (int i = 0; i < bodyCount; i++) {
+            int id = buffer.getInt();
+            PhysicsRecorder.getTransform(buffer, recorded);
+            RigidBodyComponent body = id < bodies.length ? bodies[id] : null;
+            if(body == null || body.rigidBody == null) {
+                mismatchCount++;
+                maxError = Float.POSITIVE_INFINITY;
+                continue;
+            }
+
+            body.rigidBody.getWorldTransform(replayed);
+            flatten(recorded, expected);
+            flatten(replayed, actual);
+            boolean identical = true;
+            for (int j = 0; j < 12; j++) {
+                if(Float.floatToRawIntBits(expected[j]) != Float.floatToRawIntBits(actual[j])) identical = false;
+                maxError = Math.max(maxError, Math.abs(expected[j] - actual[j]));
+            }
+            if(!identical) mismatchCount++;
+        }
+
+        return new Result(steps, stepCount, bodyCount, mismatchCount, maxError);
+    }
+
+    private static void flatten(Transform transform, float[] dest) {
+        dest[0] = transform.basis.m00;
+        dest[1] = transform.basis.m01;
+        dest[2] = transform.basis.m02;
+        dest[3] = transform.basis.m10;
+        dest[4] = transform.basis.m11;
+        dest[5] = transform.basis.m12;
+        dest[6] = transform.basis.m20;
+        dest[7] = transform.basis.m21;
+        dest[8] = transform.basis.m22;
+        dest[9] = transform.origin.x;
+        dest[10] = transform.origin.y;
+        dest[11] = transform.origin.z;
+    }
+
+    public static void main(String[] args) {
+        Logger.setConsoleTarget(System.out);
+        if(args.length == 0) {
+            Logger.error(PhysicsReplay.class, "Usage: PhysicsReplay <recording> [--repeat <n>] [--csv <file>]");
+            System.exit(2);
+        }
+
+        Path recording = Path.of(args[0]);
+        int repeat = 1;
+        Path csv = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--repeat" -> repeat = Integer.parseInt(args[i + 1]);
+                case "--csv" -> csv = Path.of(args[i + 1]);
+                default -> throw new SkyRuntimeException("Unknown option " + args[i]);
+            }
+        }
+
+        Result result = null;
+        for (int i = 0; i < repeat; i++) {
+            result = run(recording);
+            Logger.info(PhysicsReplay.class, "Run " + (i + 1) + "/" + repeat + ": " + result);
+        }
+        if(csv != null) result.writeCsv(csv);
+
+        System.exit(result.isIdentical() ? 0 : 1);
+    }
+}
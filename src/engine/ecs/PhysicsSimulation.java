@@ -0,0 +1,192 @@
+package engine.ecs;
+
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionConfiguration;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import engine.EventChannel;
+import engine.SkyRuntimeException;
+import engine.physics.PhysicsWorld;
+
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+//The dynamics world and everything that changes while stepping it. Only ever used by one thread at a time: the main
+//thread in BulletSystem.run(), or the PhysicsThread when the BulletSystem is threaded
+class PhysicsSimulation {
+    private final PhysicsWorld dynamicsWorld;
+    private final EventChannel<ContactEvent> contacts;
+    private final BodyTransforms transforms = new BodyTransforms();
+    //Every body added through add(), for going from what jbullet hands out back to the component
+    private final Map<CollisionObject, RigidBodyComponent> components = new IdentityHashMap<>();
+    private final ContactTracker contactTracker = new ContactTracker(components);
+    private long stepNanos, captureNanos;
+    private PhysicsRecorder recorder;
+
+    private final Transform transformVM = new Transform();
+    private final Quat4f rotVM = new Quat4f();
+
+    PhysicsSimulation(EventChannel<ContactEvent> contacts) {
+        this.contacts = contacts;
+
+        BroadphaseInterface broadphaseInterface = new DbvtBroadphase();
+        CollisionConfiguration collisionConfiguration = new DefaultCollisionConfiguration();
+        CollisionDispatcher collisionDispatcher = new CollisionDispatcher(collisionConfiguration);
+        ConstraintSolver constraintSolver = new SequentialImpulseConstraintSolver();
+
+        dynamicsWorld = new PhysicsWorld(collisionDispatcher, broadphaseInterface, constraintSolver, collisionConfiguration);
+        dynamicsWorld.setGravity(new Vector3f(0, -9.81f, 0));
+    }
+
+    PhysicsWorld getWorld() {
+        return dynamicsWorld;
+    }
+
+    BodyTransforms getTransforms() {
+        return transforms;
+    }
+
+    void add(RigidBodyComponent rigidBodyComponent) {
+        dynamicsWorld.addRigidBody(rigidBodyComponent.rigidBody);
+        components.put(rigidBodyComponent.rigidBody, rigidBodyComponent);
+        rigidBodyComponent.simulation = this;
+        if(recorder != null) recorder.add(rigidBodyComponent);
+
+        transforms.ensureCapacity(transforms.count + 1);
+        int i = transforms.count++;
+        rigidBodyComponent.slot = i;
+        transforms.bodies[i] = rigidBodyComponent;
+        //Static and kinematic bodies are never written back
+        transforms.moving[i] = !rigidBodyComponent.rigidBody.isStaticOrKinematicObject();
+        transforms.changed[i] = 0;
+
+        //Starts at rest, without anything to interpolate from
+        readTransform(i);
+        transforms.settle(i);
+    }
+
+    void remove(RigidBodyComponent rigidBodyComponent) {
+        int i = rigidBodyComponent.slot;
+        if(i == -1) return;
+
+        dynamicsWorld.removeRigidBody(rigidBodyComponent.rigidBody);
+        components.remove(rigidBodyComponent.rigidBody);
+        rigidBodyComponent.slot = -1;
+        rigidBodyComponent.simulation = null;
+        if(recorder != null) recorder.remove(rigidBodyComponent);
+
+        int last = --transforms.count;
+        if(i != last) {
+            transforms.move(last, i);
+            transforms.bodies[i].slot = i;
+        }
+        transforms.bodies[last] = null;
+    }
+
+    void command(RigidBodyComponent rigidBodyComponent, BodyCommand.Type type, float x, float y, float z) {
+        if(recorder != null) recorder.command(rigidBodyComponent, type, x, y, z);
+        BodyCommand.apply(rigidBodyComponent.rigidBody, type, x, y, z);
+    }
+
+    //Bodies already in the world are recorded as added now, in the world's order and with their velocities and sleep
+    //state. Contact caches and the broadphase can't be recorded, so only a recording started before the first step
+    //replays exactly
+    void startRecording(PhysicsRecorder recorder) {
+        if(this.recorder != null) throw new SkyRuntimeException("Physics is already being recorded");
+        recorder.start(dynamicsWorld.getGravity(new Vector3f()));
+
+        ObjectArrayList<CollisionObject> collisionObjects = dynamicsWorld.getCollisionObjectArray();
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            RigidBodyComponent rigidBodyComponent = components.get(collisionObjects.getQuick(i));
+            if(rigidBodyComponent == null) continue;
+
+            recorder.add(rigidBodyComponent);
+            recorder.state(rigidBodyComponent);
+        }
+        this.recorder = recorder;
+    }
+
+    void stopRecording() {
+        if(recorder == null) return;
+
+        recorder.end(transforms);
+        recorder = null;
+    }
+
+    //Returns whether anything could have moved
+    boolean step(float timestep) {
+        transforms.step++;
+        if(recorder != null) recorder.step(timestep);
+
+        //A step where every body sleeps changes nothing, yet jbullet still walks every island
+        if(!anyAwake()) return false;
+
+        long start = System.nanoTime();
+        dynamicsWorld.stepSimulation(timestep, 4, timestep);
+        contactTracker.update(dynamicsWorld.getDispatcher(), contacts);
+
+        long captureStart = System.nanoTime();
+        captureTransforms();
+        long end = System.nanoTime();
+        stepNanos += end - start;
+        captureNanos += end - captureStart;
+
+        //The world only times its own phases
+        transforms.stats.read(dynamicsWorld);
+        transforms.stats.syncNanos += captureNanos;
+        transforms.stats.totalNanos = stepNanos;
+        return true;
+    }
+
+    //Covers bodies added to Physics.world directly as well, a script waking a body with activate() restarts stepping
+    private boolean anyAwake() {
+        ObjectArrayList<CollisionObject> collisionObjects = dynamicsWorld.getCollisionObjectArray();
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            CollisionObject collisionObject = collisionObjects.getQuick(i);
+            if(!collisionObject.isStaticObject() && collisionObject.isActive()) return true;
+        }
+        return false;
+    }
+
+    //After every step. Sleeping and static bodies don't move, so only bodies that are awake (or fell asleep in this step)
+    //are read. A body that falls asleep stops interpolating and rests at its final transform
+    private void captureTransforms() {
+        for (int i = 0; i < transforms.count; i++) {
+            RigidBody rigidBody = transforms.bodies[i].rigidBody;
+            if(rigidBody.isStaticOrKinematicObject()) continue;
+
+            boolean active = rigidBody.isActive();
+            if(!active && !transforms.moving[i]) continue;
+            transforms.moving[i] = active;
+            transforms.changed[i] = transforms.step;
+
+            transforms.shift(i);
+            readTransform(i);
+            if(!active) transforms.settle(i);
+        }
+    }
+
+    private void readTransform(int i) {
+        transforms.bodies[i].rigidBody.getWorldTransform(transformVM);
+        transformVM.getRotation(rotVM);
+
+        float[] positions = transforms.currentPositions;
+        float[] rotations = transforms.currentRotations;
+        positions[i * 3] = transformVM.origin.x;
+        positions[i * 3 + 1] = transformVM.origin.y;
+        positions[i * 3 + 2] = transformVM.origin.z;
+        rotations[i * 4] = rotVM.x;
+        rotations[i * 4 + 1] = rotVM.y;
+        rotations[i * 4 + 2] = rotVM.z;
+        rotations[i * 4 + 3] = rotVM.w;
+    }
+}
@@ -0,0 +1,117 @@
+package engine.ecs;
+
+import engine.physics.PhysicsWorld;
+
+//What physics cost during one frame of the BulletSystem and what it worked on. Times are in nanoseconds. With a physics
+//thread everything but the main thread's part of the sync covers the steps that finished since the previous frame.
+//The body, pair and contact counts are those after the latest step
+public class PhysicsStats {
+    long totalNanos, broadphaseNanos, narrowphaseNanos, solverNanos, syncNanos;
+    long substeps, droppedSteps;
+    int activeBodies, sleepingBodies, overlappingPairs, contactPoints;
+
+    //Stepping, tracking contacts and syncing transforms
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBroadphaseNanos() {
+        return broadphaseNanos;
+    }
+
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    public long getSolverNanos() {
+        return solverNanos;
+    }
+
+    //Motion states, the stepped transforms and writing them to the TransformComponents
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    //Integration, contact events and whatever else isn't in the other times
+    public long getOtherNanos() {
+        return totalNanos - broadphaseNanos - narrowphaseNanos - solverNanos - syncNanos;
+    }
+
+    public int getSubsteps() {
+        return (int) substeps;
+    }
+
+    //Steps that were due but skipped: the frame took longer than 0.25s, stepSimulation() hit its substep cap or the
+    //physics thread had fallen behind. Any of them means physics can't keep up with the game
+    public int getDroppedSteps() {
+        return (int) droppedSteps;
+    }
+
+    public int getActiveBodies() {
+        return activeBodies;
+    }
+
+    public int getSleepingBodies() {
+        return sleepingBodies;
+    }
+
+    public int getOverlappingPairs() {
+        return overlappingPairs;
+    }
+
+    public int getContactPoints() {
+        return contactPoints;
+    }
+
+    //The world's totals, without the parts timed outside of it
+    void read(PhysicsWorld world) {
+        broadphaseNanos = world.getBroadphaseNanos();
+        narrowphaseNanos = world.getNarrowphaseNanos();
+        solverNanos = world.getSolverNanos();
+        syncNanos = world.getSyncNanos();
+        substeps = world.getSubsteps();
+        droppedSteps = world.getDroppedSubsteps();
+        activeBodies = world.getActiveBodies();
+        sleepingBodies = world.getSleepingBodies();
+        overlappingPairs = world.getOverlappingPairs();
+        contactPoints = world.getContactPoints();
+    }
+
+    //What happened between two sets of totals
+    void setDifference(PhysicsStats now, PhysicsStats before) {
+        totalNanos = now.totalNanos - before.totalNanos;
+        broadphaseNanos = now.broadphaseNanos - before.broadphaseNanos;
+        narrowphaseNanos = now.narrowphaseNanos - before.narrowphaseNanos;
+        solverNanos = now.solverNanos - before.solverNanos;
+        syncNanos = now.syncNanos - before.syncNanos;
+        substeps = now.substeps - before.substeps;
+        droppedSteps = now.droppedSteps - before.droppedSteps;
+        activeBodies = now.activeBodies;
+        sleepingBodies = now.sleepingBodies;
+        overlappingPairs = now.overlappingPairs;
+        contactPoints = now.contactPoints;
+    }
+
+    void set(PhysicsStats other) {
+        totalNanos = other.totalNanos;
+        broadphaseNanos = other.broadphaseNanos;
+        narrowphaseNanos = other.narrowphaseNanos;
+        solverNanos = other.solverNanos;
+        syncNanos = other.syncNanos;
+        substeps = other.substeps;
+        droppedSteps = other.droppedSteps;
+        activeBodies = other.activeBodies;
+        sleepingBodies = other.sleepingBodies;
+        overlappingPairs = other.overlappingPairs;
+        contactPoints = other.contactPoints;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%.2fms (broadphase %.2f, narrowphase %.2f, solver %.2f, sync %.2f), %d substeps, %d dropped, %d active, %d sleeping, %d pairs, %d contacts",
+                totalNanos / 1e6, broadphaseNanos / 1e6, narrowphaseNanos / 1e6, solverNanos / 1e6, syncNanos / 1e6,
+                substeps, droppedSteps, activeBodies, sleepingBodies, overlappingPairs, contactPoints
+        );
+    }
+}
@@ -0,0 +1,150 @@
+package engine.ecs;
+
+import engine.EventChannel;
+import engine.ExceptionUtil;
+import engine.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//Steps a PhysicsSimulation on a thread of its own. The main thread requests steps as game time passes and reads the
+//latest complete BodyTransforms without waiting, so stepping overlaps whatever the main thread does next (rendering).
+//Transforms are triple buffered: the physics thread fills one buffer, the main thread reads another and the newest
+//finished one waits in between. Bodies and forces only reach the world through queues drained before each step
+class PhysicsThread implements Runnable {
+    //Steps the thread may fall behind by, further ones are dropped like stepSimulation drops substeps
+    private static final int MAX_PENDING_STEPS = 4;
+    private static final int COMMAND_CAPACITY = 4096;
+
+    private final PhysicsSimulation simulation;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Throwable error;
+
+    private final AtomicInteger pendingSteps = new AtomicInteger();
+    private volatile float timestep;
+
+    private final ConcurrentLinkedQueue<RigidBodyComponent> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<RigidBodyComponent> removed = new ConcurrentLinkedQueue<>();
+    private final EventChannel<BodyCommand> commands = new EventChannel<>(COMMAND_CAPACITY, BodyCommand::new);
+    private final Consumer<BodyCommand> applyCommand = this::apply;
+
+    private BodyTransforms back = new BodyTransforms();
+    private final AtomicReference<BodyTransforms> latest = new AtomicReference<>(new BodyTransforms());
+
+    PhysicsThread(PhysicsSimulation simulation) {
+        this.simulation = simulation;
+
+        //Bodies already in the world show up before the first step
+        back.copyFrom(simulation.getTransforms());
+        latest.set(back);
+        back = new BodyTransforms();
+
+        thread = new Thread(this, "Physics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                //Bodies still come and go on frames without a step
+                if(pendingSteps.get() == 0) {
+                    applyChanges();
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                applyChanges();
+                simulation.step(timestep);
+                pendingSteps.decrementAndGet();
+
+                back.copyFrom(simulation.getTransforms());
+                back = latest.getAndSet(back);
+            }
+        } catch (Throwable e) {
+            error = e;
+            Logger.error(PhysicsThread.class, "Physics thread failed\n" + ExceptionUtil.exceptionToString(e));
+        }
+    }
+
+    private void applyChanges() {
+        RigidBodyComponent rigidBodyComponent;
+        while ((rigidBodyComponent = removed.poll()) != null) {
+            simulation.remove(rigidBodyComponent);
+            rigidBodyComponent.removing = false;
+        }
+        while ((rigidBodyComponent = added.poll()) != null) simulation.add(rigidBodyComponent);
+        commands.drain(applyCommand);
+    }
+
+    private void apply(BodyCommand command) {
+        //The body may have left the world since the command was queued
+        if(command.body.slot != -1) simulation.command(command.body, command.type, command.x, command.y, command.z);
+        command.body = null;
+    }
+
+    //Main thread. Returns how many of the steps were taken on, the rest is dropped when the thread has fallen behind
+    int requestSteps(int steps, float timestep) {
+        if(steps == 0) {
+            if(!added.isEmpty() || !removed.isEmpty()) LockSupport.unpark(thread);
+            return 0;
+        }
+
+        this.timestep = timestep;
+        int pending = pendingSteps.getAndAccumulate(steps, (current, added) -> Math.min(current + added, MAX_PENDING_STEPS));
+        LockSupport.unpark(thread);
+        return Math.max(0, Math.min(steps, MAX_PENDING_STEPS - pending));
+    }
+
+    void add(RigidBodyComponent rigidBodyComponent) {
+        added.add(rigidBodyComponent);
+    }
+
+    //A body removed before the thread got to add it is never added, otherwise it would stay in the world for good
+    void remove(RigidBodyComponent rigidBodyComponent) {
+        if(added.remove(rigidBodyComponent)) return;
+
+        rigidBodyComponent.removing = true;
+        removed.add(rigidBodyComponent);
+    }
+
+    //Any thread, dropped (and counted by the channel) when the queue is full
+    void command(BodyCommand.Type type, RigidBodyComponent body, float x, float y, float z) {
+        long sequence = commands.claim();
+        if(sequence == -1) return;
+
+        commands.get(sequence).set(type, body, x, y, z);
+        commands.publish(sequence);
+    }
+
+    //Main thread. Trades front for the newest finished transforms, or returns front when nothing newer is done yet
+    BodyTransforms swap(BodyTransforms front) {
+        if(latest.get().step <= front.step) return front;
+        return latest.getAndSet(front);
+    }
+
+    Throwable getError() {
+        return error;
+    }
+
+    //Main thread. Waits for the step in progress, then takes the steps and changes still queued on the calling thread,
+    //so the simulation can go on from there as if it had never been threaded
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        applyChanges();
+        if(error != null) return;
+        for (int steps = pendingSteps.getAndSet(0); steps > 0; steps--) simulation.step(timestep);
+    }
+}
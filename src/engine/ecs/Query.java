@@ -0,0 +1,147 @@
+package engine.ecs;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+//A live view over every Actor whose Archetype contains all the queried component types.
+//The storage registers new matching Archetypes as they are created, so iterating only touches matching Actors
+public class Query implements Iterable<Actor> {
+    private final ArchetypeStorage storage;
+    private final ComponentMask mask;
+    //Archetypes are added rarely but may be while a system on the pool iterates
+    private final List<Archetype> archetypes = new CopyOnWriteArrayList<>();
+    //forEach's handles, reused unless another forEach on this Query (nested or on another thread) still has them
+    private long[] handles = new long[64];
+    private final AtomicBoolean handlesTaken = new AtomicBoolean();
+
+    Query(ArchetypeStorage storage, ComponentMask mask) {
+        this.storage = storage;
+        this.mask = mask;
+    }
+
+    public ComponentMask getMask() {
+        return mask;
+    }
+
+    boolean matches(Archetype archetype) {
+        return archetype.getMask().containsAll(mask);
+    }
+
+    void addArchetype(Archetype archetype) {
+        archetypes.add(archetype);
+    }
+
+    public List<Archetype> getArchetypes() {
+        return archetypes;
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < archetypes.size(); i++) {
+            size += archetypes.get(i).size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < archetypes.size(); i++) {
+            if(archetypes.get(i).size() > 0) return false;
+        }
+        return true;
+    }
+
+    public Actor first() {
+        for (int i = 0; i < archetypes.size(); i++) {
+            Archetype archetype = archetypes.get(i);
+            if(archetype.size() > 0) return archetype.getActor(0);
+        }
+        return null;
+    }
+
+    //Visits the Actors that match when it is called. The action may create or destroy Actors and add or remove components,
+    //which swaps rows around, so the handles are taken up front: Actors that are gone or no longer match by the time
+    //they come up are skipped, new ones aren't visited
+    @Override
+    public void forEach(Consumer<? super Actor> action) {
+        boolean shared = handlesTaken.compareAndSet(false, true);
+        int size = size();
+        long[] taken = shared && handles.length >= size ? handles : new long[Math.max(size, 64)];
+        if(shared) handles = taken;
+
+        try {
+            int count = 0;
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype archetype = archetypes.get(i);
+                for (int row = 0; row < archetype.size(); row++) {
+                    taken[count++] = archetype.getActor(row).getHandle();
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                Actor actor = storage.getActor(taken[i]);
+                if(actor != null && matches(actor.getArchetype())) action.accept(actor);
+            }
+        }
+        finally {
+            if(shared) handlesTaken.set(false);
+        }
+    }
+
+    //Visits the Actors where at least one of the given components was written after sinceVersion
+    //(see ArchetypeStorage.nextVersion() and ActorSystem.getLastRunVersion()). Archetypes without any such write are skipped whole
+    public void forEachChanged(long sinceVersion, Consumer<? super Actor> action, Class<?>... components) {
+        int[] ids = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            ids[i] = ComponentRegistry.getId(components[i]);
+        }
+
+        int[] columns = new int[components.length];
+        for (int i = 0; i < archetypes.size(); i++) {
+            Archetype archetype = archetypes.get(i);
+
+            int columnCount = 0;
+            for(int id : ids) {
+                int column = archetype.getColumnIndex(id);
+                if(column != -1 && archetype.getColumnVersion(column) > sinceVersion) columns[columnCount++] = column;
+            }
+            if(columnCount == 0) continue;
+
+            for (int row = 0; row < archetype.size(); row++) {
+                for (int c = 0; c < columnCount; c++) {
+                    if(archetype.getVersion(columns[c], row) > sinceVersion) {
+                        action.accept(archetype.getActor(row));
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    //Walks the rows as they are, unlike forEach. Structural changes while iterating skip or repeat Actors
+    @Override
+    public Iterator<Actor> iterator() {
+        return new Iterator<>() {
+            private int archetypeIndex, row;
+
+            @Override
+            public boolean hasNext() {
+                while (archetypeIndex < archetypes.size()) {
+                    if(row < archetypes.get(archetypeIndex).size()) return true;
+                    archetypeIndex++;
+                    row = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public Actor next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return archetypes.get(archetypeIndex).getActor(row++);
+            }
+        };
+    }
+}
@@ -5,7 +5,7 @@ import engine.graphics.pipelines.SceneFeatures;
 
 import java.util.List;
 
-public class RenderSystem extends ActorSystem {
+public final class RenderSystem extends ActorSystem {
     private Renderer renderer;
     private RenderPipeline renderPipeline;
     private Scene scene;
@@ -15,22 +15,33 @@ public class RenderSystem extends ActorSystem {
         this.renderPipeline = renderPipeline;
         this.scene = scene;
         renderPipeline.init(renderer);
+
+        reads(
+                ShaderComponent.class,
+                MeshComponent.class,
+                MeshListComponent.class,
+                MaterialComponent.class,
+                SpotlightComponent.class,
+                CameraComponent.class
+        );
+        //World transforms are brought up to date right before rendering
+        writes(TransformComponent.class);
+        pinToMainThread();
     }
 
     @Override
     public void run(Actor root) {
-        root.previsitAllActors(actor -> {
-            if(actor.has(ShaderComponent.class)) {
-                ShaderComponent shaderComponent = actor.getComponent(ShaderComponent.class);
-                if (actor.has(MeshComponent.class)) {
-                    setMaterialData(renderer.getFrameIndex(), shaderComponent.shaderProgram(), actor.getComponent(MaterialComponent.class));
-                    setSceneDescAndTransformData(renderer.getFrameIndex(), actor.getComponent(MeshComponent.class));
-                }
-                if (actor.has(MeshListComponent.class)) {
-                    setMaterialData(renderer.getFrameIndex(), shaderComponent.shaderProgram(), actor.getComponent(MaterialComponent.class));
-                    setSceneDescAndTransformData(renderer.getFrameIndex(), actor.getComponent(MeshListComponent.class));
-                }
-            }
+        scene.updateTransforms();
+
+        scene.query(ShaderComponent.class, MeshComponent.class).forEach(actor -> {
+            ShaderComponent shaderComponent = actor.getComponent(ShaderComponent.class);
+            setMaterialData(renderer.getFrameIndex(), shaderComponent.shaderProgram(), actor.getComponent(MaterialComponent.class));
+            setSceneDescAndTransformData(renderer.getFrameIndex(), actor.getComponent(MeshComponent.class));
+        });
+        scene.query(ShaderComponent.class, MeshListComponent.class).forEach(actor -> {
+            ShaderComponent shaderComponent = actor.getComponent(ShaderComponent.class);
+            setMaterialData(renderer.getFrameIndex(), shaderComponent.shaderProgram(), actor.getComponent(MaterialComponent.class));
+            setSceneDescAndTransformData(renderer.getFrameIndex(), actor.getComponent(MeshListComponent.class));
         });
 
 
@@ -3,10 +3,11 @@ package engine.ecs;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
 import com.bulletphysics.linearmath.MotionState;
+import com.bulletphysics.linearmath.Transform;
 import engine.physics.Collider;
 import engine.physics.Interface;
 
-@ComponentArray(mask = 1 << 4)
+@ComponentArray
 public class RigidBodyComponent {
     public RigidBody rigidBody;
     public Collider collider;
@@ -17,6 +18,25 @@ public class RigidBodyComponent {
     public Interface mat;
     public boolean rotate = true;
 
+    //Slot in the BulletSystem's registered body list, -1 while the body isn't in the world
+    int index = -1;
+    Actor actor;
+    //The Actor's handle when the body was registered, taken on the main thread so other threads never read the Actor
+    long handle;
+    //Slot in the PhysicsSimulation, only touched by the thread that steps it
+    int slot = -1;
+    //Step of the last transform the BulletSystem wrote back into the TransformComponent
+    long writtenStep;
+    //Set while the BulletSystem steps on a thread of its own
+    PhysicsThread thread;
+    //Set while the physics thread has yet to take the body out of the world. It still reads rigidBody until then, so
+    //the body isn't made again before that
+    volatile boolean removing;
+    //The simulation the body is in, commands go straight to it without a physics thread
+    PhysicsSimulation simulation;
+    //Used by createBody() instead of the TransformComponent when set, replays start bodies from the exact recorded transform
+    Transform startTransform;
+
     public RigidBodyComponent(Collider collider, float mass, Interface mat) {
         this.collider = collider;
         this.mass = mass;
@@ -30,5 +50,32 @@ public class RigidBodyComponent {
         this.rotate = rotate;
     }
 
+    //Safe to call from scripts whether or not physics runs on its own thread. With a physics thread these are queued
+    //and take effect at its next step, so use them instead of changing rigidBody directly
+    public void applyForce(float x, float y, float z) {
+        command(BodyCommand.Type.Force, x, y, z);
+    }
+
+    public void applyImpulse(float x, float y, float z) {
+        command(BodyCommand.Type.Impulse, x, y, z);
+    }
+
+    public void applyTorque(float x, float y, float z) {
+        command(BodyCommand.Type.Torque, x, y, z);
+    }
+
+    public void setLinearVelocity(float x, float y, float z) {
+        command(BodyCommand.Type.LinearVelocity, x, y, z);
+    }
+
+    public void setAngularVelocity(float x, float y, float z) {
+        command(BodyCommand.Type.AngularVelocity, x, y, z);
+    }
+
+    void command(BodyCommand.Type type, float x, float y, float z) {
+        PhysicsThread thread = this.thread;
+        if(thread != null) thread.command(type, this, x, y, z);
+        else if(simulation != null) simulation.command(this, type, x, y, z);
+    }
 
 }
@@ -1,19 +1,28 @@
 package engine.ecs;
 
 
+import engine.EventBus;
 import engine.graphics.Disposable;
 import engine.mio.IRGen;
 import engine.mio.Instruction;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class Scene extends Disposable {
     private List<ActorSystem> systems = new ArrayList<>();
+    private ArchetypeStorage storage = new ArchetypeStorage();
+    private SystemScheduler scheduler = new SystemScheduler();
+    private TransformSystem transformSystem = new TransformSystem();
+    private SceneStreamer streamer;
+    private FrameScheduler frameScheduler;
+    private EventBus events = new EventBus();
     private Actor root;
     private String name;
 
@@ -26,11 +35,37 @@ public class Scene extends Disposable {
         this.name = name;
     }
 
+    //Events are dispatched on this thread before and after the systems run, listeners may change the Scene directly
     public void tick() {
-        for(ActorSystem system : systems) {
-            system.run(root);
-        }
+        storage.playbackCommands();
+        events.dispatch();
+        if(streamer != null) streamer.update();
+        if(frameScheduler != null) frameScheduler.update();
+        scheduler.run(root, storage::playbackCommands);
+        events.dispatch();
+    }
+
+    public EntityCommandBuffer getCommandBuffer() {
+        return storage.getCommandBuffer();
+    }
+
+    //Created on first use, along with its loading threads
+    public SceneStreamer getStreamer() {
+        if(streamer == null) streamer = new SceneStreamer(this);
+        return streamer;
+    }
 
+    public FrameScheduler getFrameScheduler() {
+        if(frameScheduler == null) frameScheduler = new FrameScheduler();
+        return frameScheduler;
+    }
+
+    public EventBus getEvents() {
+        return events;
+    }
+
+    public SystemScheduler getScheduler() {
+        return scheduler;
     }
 
     public Actor getRootActor() {
@@ -40,10 +75,33 @@ public class Scene extends Disposable {
     public void setRootActor(Actor root) {
         this.root = root;
         this.actor = root;
+        root.setStorageRecursive(storage);
+        root.markTransformDirty();
+    }
+
+    //Brings every world transform up to date, only the subtrees marked dirty since the last update are visited
+    public void updateTransforms() {
+        if(root != null) transformSystem.run(root);
+    }
+
+    public ArchetypeStorage getStorage() {
+        return storage;
+    }
+
+    public void destroyActor(Actor actor) {
+        storage.destroy(actor);
+    }
+
+    public Actor getActor(long handle) {
+        return storage.getActor(handle);
+    }
+
+    public Query query(Class<?>... with) {
+        return storage.query(with);
     }
 
     public Actor newActor(String name, Object... components) {
-        Actor actor = new Actor(name);
+        Actor actor = storage.newActor(name);
         for(Object component : components)
             actor.add(component);
 
@@ -51,13 +109,20 @@ public class Scene extends Disposable {
     }
 
     public void exec(IRGen irGen) {
+        exec(irGen, storage, actor, Runnable::run);
+    }
+
+    //Builds the program's Actors into target under parent. Creating a SpotlightComponent allocates GPU resources,
+    //so it is handed to mainThread, which lets streaming threads build Actors off the main thread
+    public void exec(IRGen irGen, ArchetypeStorage target, Actor parent, Consumer<Runnable> mainThread) {
+        Actor actor = parent;
 
         for (Iterator<Instruction> iterator = irGen.getList().iterator(); iterator.hasNext(); ) {
             Instruction instruction = iterator.next();
             switch (instruction.opcode()) {
                 case PushActor -> {
                     String actorName = (String) instruction.operands()[0];
-                    Actor newActor = new Actor(actorName);
+                    Actor newActor = target.newActor(actorName);
                     if(actor != null) actor.addActor(newActor);
                     actor = newActor;
                 }
@@ -78,40 +143,43 @@ public class Scene extends Disposable {
 
 
 
-                        SpotlightComponent spotlightComponent = new SpotlightComponent(
-                                this,
-                                new Matrix4f().lookAt(
-                                        new Vector3f(
-                                                (float) eye.operands()[1],
-                                                (float) eye.operands()[2],
-                                                (float) eye.operands()[3]
-                                        ),
-                                        new Vector3f(
-                                                (float) center.operands()[1],
-                                                (float) center.operands()[2],
-                                                (float) center.operands()[3]
-                                        ),
-                                        new Vector3f(
-                                                (float) up.operands()[1],
-                                                (float) up.operands()[2],
-                                                (float) up.operands()[3]
-                                        )
-                                ),
-                                new Matrix4f().perspective(
-                                        (float) Math.toRadians((float) fovDeg.operands()[1]),
-                                        ((float) aspectRatio.operands()[1]),
-                                        ((float) zNear.operands()[1]),
-                                        ((float) zFar.operands()[1]),
-                                        (boolean) zZeroToOne.operands()[1]
-                                ),
-                                (boolean) invertY.operands()[1]
-                        );
-                        spotlightComponent.color = new Vector3f(
-                                (float) color.operands()[1],
-                                (float) color.operands()[2],
-                                (float) color.operands()[3]
-                        );
-                        actor.add(spotlightComponent);
+                        Actor spotlightActor = actor;
+                        mainThread.accept(() -> {
+                            SpotlightComponent spotlightComponent = new SpotlightComponent(
+                                    this,
+                                    new Matrix4f().lookAt(
+                                            new Vector3f(
+                                                    (float) eye.operands()[1],
+                                                    (float) eye.operands()[2],
+                                                    (float) eye.operands()[3]
+                                            ),
+                                            new Vector3f(
+                                                    (float) center.operands()[1],
+                                                    (float) center.operands()[2],
+                                                    (float) center.operands()[3]
+                                            ),
+                                            new Vector3f(
+                                                    (float) up.operands()[1],
+                                                    (float) up.operands()[2],
+                                                    (float) up.operands()[3]
+                                            )
+                                    ),
+                                    new Matrix4f().perspective(
+                                            (float) Math.toRadians((float) fovDeg.operands()[1]),
+                                            ((float) aspectRatio.operands()[1]),
+                                            ((float) zNear.operands()[1]),
+                                            ((float) zFar.operands()[1]),
+                                            (boolean) zZeroToOne.operands()[1]
+                                    ),
+                                    (boolean) invertY.operands()[1]
+                            );
+                            spotlightComponent.color = new Vector3f(
+                                    (float) color.operands()[1],
+                                    (float) color.operands()[2],
+                                    (float) color.operands()[3]
+                            );
+                            spotlightActor.add(spotlightComponent);
+                        });
 
 
                     }
@@ -124,23 +192,37 @@ public class Scene extends Disposable {
 
     }
 
+    public void saveSnapshot(Path path) {
+        SceneSnapshot.write(root, path);
+    }
+
+    //Replaces the current Actor tree with the one stored in the snapshot
+    public void loadSnapshot(Path path) {
+        Actor loaded = SceneSnapshot.read(this, path);
+        if(root != null) storage.destroy(root);
+        setRootActor(loaded);
+    }
+
     public Actor newRootActor(String name) {
-        return new Actor(name);
+        return storage.newActor(name);
     }
 
 
 
     public void addSystem(ActorSystem... actorSystems) {
         this.systems.addAll(Arrays.asList(actorSystems));
+        scheduler.setSystems(systems);
     }
 
 
     public void removeSystem(ActorSystem actorSystem) {
         systems.remove(actorSystem);
+        scheduler.setSystems(systems);
     }
 
 
     public void close() {
+        if(streamer != null) streamer.close();
         for(ActorSystem system : systems) {
             system.dispose();
         }
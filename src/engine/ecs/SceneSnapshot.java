@@ -0,0 +1,418 @@
+package engine.ecs;
+
+import engine.Logger;
+import engine.SkyRuntimeException;
+import engine.physics.Collider;
+import engine.physics.Interface;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+//Versioned binary dump of an Actor tree and the components that have a registered ComponentSerializer. Components that
+//only exist at runtime (meshes, materials, cameras, scripts...) have none, they are skipped and logged
+//Layout (little endian):
+//  int magic, int version
+//  int typeCount, typeCount * string (component class names, referenced by index below)
+//  int actorCount, actorCount * actor, breadth first so a parent always comes before its children:
+//      int parentIndex (-1 for the root), string name, int componentCount,
+//      componentCount * (int typeIndex, int byteLength, bytes)
+//Strings are an int byte length followed by UTF-8. byteLength lets a loader skip components it has no serializer for
+public class SceneSnapshot {
+    public static final int MAGIC = 0x534B5953; //SKYS
+    public static final int VERSION = 1;
+    private static final int MATRIX_BYTES = 16 * Float.BYTES;
+
+    private static final Map<Class<?>, ComponentSerializer<?>> serializers = new HashMap<>();
+    private static final Map<String, Class<?>> typesByName = new HashMap<>();
+
+    static {
+        register(TransformComponent.class, new ComponentSerializer<>() {
+            @Override
+            public int sizeOf(TransformComponent component) {
+                return Integer.BYTES + MATRIX_BYTES;
+            }
+
+            @Override
+            public void write(TransformComponent component, ByteBuffer buffer) {
+                buffer.putInt(component.transformIndex());
+                putMatrix(buffer, component.local());
+            }
+
+            @Override
+            public TransformComponent read(Scene scene, ByteBuffer buffer) {
+                int transformIndex = buffer.getInt();
+                return new TransformComponent(transformIndex, getMatrix(buffer));
+            }
+        });
+
+        register(SpotlightComponent.class, new ComponentSerializer<>() {
+            @Override
+            public int sizeOf(SpotlightComponent component) {
+                return MATRIX_BYTES * 2 + 1 + Float.BYTES * 7;
+            }
+
+            @Override
+            public void write(SpotlightComponent component, ByteBuffer buffer) {
+                putMatrix(buffer, component.view);
+                putMatrix(buffer, component.proj);
+                buffer.put((byte) (component.invertY ? 1 : 0));
+                buffer.putFloat(component.attenuationConstant);
+                buffer.putFloat(component.attenuationLinear);
+                buffer.putFloat(component.attenuationQuadratic);
+                buffer.putFloat(component.color.x);
+                buffer.putFloat(component.color.y);
+                buffer.putFloat(component.color.z);
+                buffer.putFloat(component.shadowNormalOffsetBias);
+            }
+
+            @Override
+            public SpotlightComponent read(Scene scene, ByteBuffer buffer) {
+                Matrix4f view = getMatrix(buffer);
+                Matrix4f proj = getMatrix(buffer);
+                SpotlightComponent component = new SpotlightComponent(scene, view, proj, buffer.get() != 0);
+                component.attenuationConstant = buffer.getFloat();
+                component.attenuationLinear = buffer.getFloat();
+                component.attenuationQuadratic = buffer.getFloat();
+                component.color = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                component.shadowNormalOffsetBias = buffer.getFloat();
+                return component;
+            }
+
+            @Override
+            public boolean requiresMainThread() {
+                return true;
+            }
+        });
+
+        register(BoundsComponent.class, new ComponentSerializer<>() {
+            @Override
+            public int sizeOf(BoundsComponent component) {
+                return Float.BYTES * 6;
+            }
+
+            @Override
+            public void write(BoundsComponent component, ByteBuffer buffer) {
+                buffer.putFloat(component.min.x).putFloat(component.min.y).putFloat(component.min.z);
+                buffer.putFloat(component.max.x).putFloat(component.max.y).putFloat(component.max.z);
+            }
+
+            @Override
+            public BoundsComponent read(Scene scene, ByteBuffer buffer) {
+                Vector3f min = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                Vector3f max = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                return new BoundsComponent(min, max);
+            }
+        });
+
+        //The body itself is made again by the BulletSystem, velocities and sleep state start over
+        register(RigidBodyComponent.class, new ComponentSerializer<>() {
+            @Override
+            public int sizeOf(RigidBodyComponent component) {
+                return component.collider.sizeOf() + Float.BYTES * 2 + 1;
+            }
+
+            @Override
+            public void write(RigidBodyComponent component, ByteBuffer buffer) {
+                component.collider.write(buffer);
+                buffer.putFloat(component.mass);
+                buffer.putFloat(component.mat.friction);
+                buffer.put((byte) (component.rotate ? 1 : 0));
+            }
+
+            @Override
+            public RigidBodyComponent read(Scene scene, ByteBuffer buffer) {
+                Collider collider = Collider.read(buffer);
+                float mass = buffer.getFloat();
+                Interface mat = new Interface(buffer.getFloat());
+                return new RigidBodyComponent(collider, mass, mat, buffer.get() != 0);
+            }
+        });
+    }
+
+    private SceneSnapshot() {}
+
+    public static synchronized <T> void register(Class<T> type, ComponentSerializer<T> serializer) {
+        serializers.put(type, serializer);
+        typesByName.put(type.getName(), type);
+    }
+
+    //register() only pairs a type with a serializer for that type, so it can be handed any component of it
+    @SuppressWarnings("unchecked")
+    private static synchronized ComponentSerializer<Object> getSerializer(Class<?> type) {
+        return (ComponentSerializer<Object>) serializers.get(type);
+    }
+
+    private static synchronized List<ComponentSerializer<Object>> getSerializers(Archetype archetype) {
+        Class<?>[] types = archetype.getTypes();
+        List<ComponentSerializer<Object>> columnSerializers = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            columnSerializers.add(getSerializer(types[i]));
+        }
+        return columnSerializers;
+    }
+
+    private static synchronized Class<?> getType(String name) {
+        return typesByName.get(name);
+    }
+
+    public static void write(Actor root, Path path) {
+        List<Actor> actors = new ArrayList<>();
+        IntList parentIndices = new IntList();
+        actors.add(root);
+        parentIndices.add(-1);
+        for (int i = 0; i < actors.size(); i++) {
+            for(Actor child = actors.get(i).getFirstChild(); child != null; child = child.getNextSibling()) {
+                actors.add(child);
+                parentIndices.add(i);
+            }
+        }
+
+        byte[][] names = new byte[actors.size()][];
+        Map<Class<?>, Integer> typeIndices = new HashMap<>();
+        List<Class<?>> types = new ArrayList<>();
+        Map<Archetype, List<ComponentSerializer<Object>>> archetypeSerializers = new IdentityHashMap<>();
+        Set<Class<?>> skipped = new HashSet<>();
+
+        //Size everything up front so the whole snapshot goes out in a single buffer
+        long size = Integer.BYTES * 3L;
+        for (int i = 0; i < actors.size(); i++) {
+            Actor actor = actors.get(i);
+            names[i] = utf8(actor.getName());
+            size += Integer.BYTES * 3L + names[i].length;
+
+            Archetype archetype = actor.getArchetype();
+            List<ComponentSerializer<Object>> columnSerializers = archetypeSerializers.computeIfAbsent(archetype, SceneSnapshot::getSerializers);
+            for (int column = 0; column < columnSerializers.size(); column++) {
+                ComponentSerializer<Object> serializer = columnSerializers.get(column);
+                if(serializer == null) {
+                    skipped.add(archetype.getTypes()[column]);
+                    continue;
+                }
+
+                Class<?> type = archetype.getTypes()[column];
+                if(!typeIndices.containsKey(type)) {
+                    typeIndices.put(type, types.size());
+                    types.add(type);
+                    size += Integer.BYTES + utf8(type.getName()).length;
+                }
+                size += Integer.BYTES * 2L + serializer.sizeOf(archetype.getColumn(column)[actor.getRow()]);
+            }
+        }
+        size += Integer.BYTES;
+        for(Class<?> type : skipped) {
+            Logger.info(SceneSnapshot.class, "No serializer registered for " + type.getName() + ", it is not saved in " + path);
+        }
+
+        if(size > Integer.MAX_VALUE) throw new SkyRuntimeException("Scene snapshot is too large (" + size + " bytes)");
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+
+        buffer.putInt(types.size());
+        for(Class<?> type : types) {
+            putString(buffer, type.getName());
+        }
+
+        buffer.putInt(actors.size());
+        for (int i = 0; i < actors.size(); i++) {
+            Actor actor = actors.get(i);
+            buffer.putInt(parentIndices.get(i));
+            buffer.putInt(names[i].length);
+            buffer.put(names[i]);
+
+            Archetype archetype = actor.getArchetype();
+            int countPosition = buffer.position();
+            int componentCount = 0;
+            buffer.putInt(0);
+
+            List<ComponentSerializer<Object>> columnSerializers = archetypeSerializers.get(archetype);
+            for (int column = 0; column < columnSerializers.size(); column++) {
+                ComponentSerializer<Object> serializer = columnSerializers.get(column);
+                if(serializer == null) continue;
+
+                Class<?> type = archetype.getTypes()[column];
+                Object component = archetype.getColumn(column)[actor.getRow()];
+                int length = serializer.sizeOf(component);
+                buffer.putInt(typeIndices.get(type));
+                buffer.putInt(length);
+
+                int start = buffer.position();
+                serializer.write(component, buffer);
+                if(buffer.position() - start != length)
+                    throw new SkyRuntimeException("Serializer for " + type.getName() + " wrote " + (buffer.position() - start) + " bytes, expected " + length);
+
+                componentCount++;
+            }
+            buffer.putInt(countPosition, componentCount);
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        catch (IOException e) {
+            throw new SkyRuntimeException(e);
+        }
+    }
+
+    //Builds the snapshot's Actor tree in the Scene's storage and returns its root. Like playbackCommands(),
+    //this must not run while systems are iterating
+    public static Actor read(Scene scene, Path path) {
+        return read(scene, scene.getStorage(), path, Runnable::run);
+    }
+
+    //Builds the tree into any storage, e.g. a streaming cell's on a background thread. Components whose serializer
+    //requiresMainThread() are added later by the Runnables handed to mainThread. The file is mapped and parsed in place.
+    //Nothing read from it keeps a view of the mapping (names are decoded, main thread components get a copy of their
+    //bytes), so it can be unmapped as soon as this returns
+    public static Actor read(Scene scene, ArchetypeStorage storage, Path path, Consumer<Runnable> mainThread) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) throw new SkyRuntimeException(path + " is too large for a scene snapshot");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            throw new SkyRuntimeException(e);
+        }
+
+        if(buffer.remaining() < Integer.BYTES * 2 || buffer.getInt() != MAGIC) throw new SkyRuntimeException(path + " is not a scene snapshot");
+
+        int version = buffer.getInt();
+        if(version != VERSION) throw new SkyRuntimeException("Unsupported scene snapshot version " + version + " in " + path);
+
+        int typeCount = buffer.getInt();
+        Class<?>[] types = new Class<?>[typeCount];
+        ComponentSerializer<?>[] typeSerializers = new ComponentSerializer<?>[typeCount];
+        Set<String> missing = new HashSet<>();
+        for (int i = 0; i < typeCount; i++) {
+            String name = getString(buffer);
+            types[i] = getType(name);
+            if(types[i] != null) typeSerializers[i] = getSerializer(types[i]);
+            else missing.add(name);
+        }
+        for(String name : missing) {
+            Logger.info(SceneSnapshot.class, "No serializer registered for " + name + ", skipping it in " + path);
+        }
+
+        //Every Actor is inserted straight into its final Archetype, the component set is known before it is created
+        int actorCount = buffer.getInt();
+        Actor[] actors = new Actor[actorCount];
+        List<Object> components = new ArrayList<>();
+        List<ComponentSerializer<?>> deferredSerializers = new ArrayList<>();
+        List<ByteBuffer> deferredData = new ArrayList<>();
+
+        for (int i = 0; i < actorCount; i++) {
+            int parentIndex = buffer.getInt();
+            String name = getString(buffer);
+            int componentCount = buffer.getInt();
+
+            components.clear();
+            deferredSerializers.clear();
+            deferredData.clear();
+            for (int c = 0; c < componentCount; c++) {
+                int typeIndex = buffer.getInt();
+                int length = buffer.getInt();
+                int end = buffer.position() + length;
+
+                ComponentSerializer<?> serializer = typeSerializers[typeIndex];
+                if(serializer != null && serializer.requiresMainThread()) {
+                    ByteBuffer data = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                    data.put(buffer.slice(buffer.position(), length)).flip();
+                    deferredSerializers.add(serializer);
+                    deferredData.add(data);
+                }
+                else if(serializer != null) components.add(serializer.read(scene, buffer));
+                buffer.position(end);
+            }
+
+            Archetype archetype = storage.getEmptyArchetype();
+            for (int c = 0; c < components.size(); c++) {
+                Class<?> type = components.get(c).getClass();
+                if(!archetype.has(type)) archetype = storage.getArchetypeWith(archetype, type);
+            }
+
+            Actor actor = storage.newPendingActor(name);
+            storage.insert(actor, archetype);
+            for (int c = 0; c < components.size(); c++) {
+                actor.add(components.get(c));
+            }
+
+            if(parentIndex != -1) actors[parentIndex].addActor(actor);
+            actors[i] = actor;
+
+            for (int d = 0; d < deferredSerializers.size(); d++) {
+                ComponentSerializer<?> serializer = deferredSerializers.get(d);
+                ByteBuffer data = deferredData.get(d);
+                mainThread.accept(() -> actor.add(serializer.read(scene, data)));
+            }
+        }
+
+        return actorCount == 0 ? null : actors[0];
+    }
+
+    private static class IntList {
+        private int[] values = new int[64];
+        private int size;
+
+        private void add(int value) {
+            if(size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        private int get(int index) {
+            return values[index];
+        }
+    }
+
+    private static void putMatrix(ByteBuffer buffer, Matrix4fc m) {
+        buffer.putFloat(m.m00()).putFloat(m.m01()).putFloat(m.m02()).putFloat(m.m03());
+        buffer.putFloat(m.m10()).putFloat(m.m11()).putFloat(m.m12()).putFloat(m.m13());
+        buffer.putFloat(m.m20()).putFloat(m.m21()).putFloat(m.m22()).putFloat(m.m23());
+        buffer.putFloat(m.m30()).putFloat(m.m31()).putFloat(m.m32()).putFloat(m.m33());
+    }
+
+    private static Matrix4f getMatrix(ByteBuffer buffer) {
+        return new Matrix4f(
+                buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(),
+                buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(),
+                buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(),
+                buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat()
+        );
+    }
+
+    private static byte[] utf8(String string) {
+        return string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = utf8(string);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
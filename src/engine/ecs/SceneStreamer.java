@@ -0,0 +1,210 @@
+package engine.ecs;
+
+import engine.ExceptionUtil;
+import engine.Logger;
+import engine.graphics.Disposable;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Loads StreamingCells around a focus point on background threads. Each cell is built into its own ArchetypeStorage
+//off the main thread, its main thread (GPU) work is spread over frames and it is attached under the Scene's root at
+//a frame boundary, from Scene.tick(). Cells past their unload radius are destroyed again and their GPU resources
+//freed, so memory stays bounded by the cells around the focus
+public class SceneStreamer {
+    private static final long FIRST_RETRY_NANOS = 500_000_000L;
+    private static final long MAX_RETRY_NANOS = 30_000_000_000L;
+
+    record LoadedCell(Actor root, ArrayDeque<Runnable> uploads) {}
+
+    private final Scene scene;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final List<StreamingCell> cells = new ArrayList<>();
+    private final Vector3f focus = new Vector3f();
+    private Actor focusActor;
+    private int maxUploadsPerTick = 8;
+    private int maxAttachesPerTick = 1;
+
+    public SceneStreamer(Scene scene, ExecutorService executor) {
+        this(scene, executor, false);
+    }
+
+    public SceneStreamer(Scene scene) {
+        this(scene, Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "SceneStreamer");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    private SceneStreamer(Scene scene, ExecutorService executor, boolean ownsExecutor) {
+        this.scene = scene;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public void addCell(StreamingCell cell) {
+        cells.add(cell);
+    }
+
+    public void removeCell(StreamingCell cell) {
+        if(cells.remove(cell)) unload(cell);
+    }
+
+    public List<StreamingCell> getCells() {
+        return cells;
+    }
+
+    public void setFocus(Vector3fc focus) {
+        this.focus.set(focus);
+        this.focusActor = null;
+    }
+
+    //Follows the world position of an Actor with a TransformComponent, e.g. the player
+    public void setFocus(Actor actor) {
+        this.focusActor = actor;
+    }
+
+    public void setMaxUploadsPerTick(int maxUploadsPerTick) {
+        this.maxUploadsPerTick = maxUploadsPerTick;
+    }
+
+    public void setMaxAttachesPerTick(int maxAttachesPerTick) {
+        this.maxAttachesPerTick = maxAttachesPerTick;
+    }
+
+    //Main thread only, while no system is running
+    void update() {
+        if(focusActor != null) {
+            TransformComponent transformComponent = focusActor.getComponent(TransformComponent.class);
+            if(transformComponent != null) transformComponent.world().getTranslation(focus);
+        }
+
+        int uploadBudget = maxUploadsPerTick;
+        int attachBudget = maxAttachesPerTick;
+
+        for (int i = 0; i < cells.size(); i++) {
+            StreamingCell cell = cells.get(i);
+            float distance = focus.distance(cell.getCenter());
+
+            switch (cell.state) {
+                case Unloaded -> {
+                    if(distance <= cell.getLoadRadius()) load(cell);
+                }
+
+                case Loading -> {
+                    if(distance > cell.getUnloadRadius()) {
+                        unload(cell);
+                    }
+                    else if(cell.future.isDone()) {
+                        try {
+                            LoadedCell loaded = cell.future.join();
+                            cell.root = loaded.root();
+                            cell.uploads = loaded.uploads();
+                            cell.state = StreamingCell.State.Uploading;
+                        } catch (CompletionException e) {
+                            Logger.error(SceneStreamer.class, "Failed to load cell " + cell.getName() + "\n" + ExceptionUtil.exceptionToString(e));
+                            cell.state = StreamingCell.State.Failed;
+                            cell.retryAt = System.nanoTime() + Math.min(FIRST_RETRY_NANOS << Math.min(cell.failures, 16), MAX_RETRY_NANOS);
+                            cell.failures++;
+                        }
+                        cell.future = null;
+                    }
+                }
+
+                case Uploading -> {
+                    if(distance > cell.getUnloadRadius()) {
+                        unload(cell);
+                        continue;
+                    }
+
+                    while (uploadBudget > 0 && !cell.uploads.isEmpty()) {
+                        cell.uploads.poll().run();
+                        uploadBudget--;
+                    }
+
+                    Actor sceneRoot = scene.getRootActor();
+                    if(cell.uploads.isEmpty() && attachBudget > 0 && sceneRoot != null) {
+                        sceneRoot.addActor(cell.root);
+                        cell.uploads = null;
+                        cell.state = StreamingCell.State.Attached;
+                        cell.failures = 0;
+                        attachBudget--;
+                    }
+                }
+
+                case Attached -> {
+                    if(distance > cell.getUnloadRadius()) unload(cell);
+                }
+
+                //Leaving the cell behind forgets its failures, coming back tries again right away
+                case Failed -> {
+                    if(distance > cell.getUnloadRadius()) unload(cell);
+                    else if(System.nanoTime() - cell.retryAt >= 0) load(cell);
+                }
+            }
+        }
+    }
+
+    private void load(StreamingCell cell) {
+        cell.state = StreamingCell.State.Loading;
+        cell.future = CompletableFuture.supplyAsync(() -> {
+            ArchetypeStorage storage = new ArchetypeStorage();
+            ArrayDeque<Runnable> uploads = new ArrayDeque<>();
+            Actor root = cell.getLoader().load(scene, storage, uploads::add);
+            return new LoadedCell(root, uploads);
+        }, executor);
+    }
+
+    private void unload(StreamingCell cell) {
+        switch (cell.state) {
+            //A load in flight can't be interrupted, its result is dropped when it finishes
+            case Loading -> cell.future.cancel(false);
+            //The uploads that already ran added their components to the cell's Actors, the rest are dropped
+            case Uploading -> {
+                release(cell.root);
+                cell.getLoader().unload(cell);
+            }
+            case Attached -> {
+                release(cell.root);
+                scene.destroyActor(cell.root);
+                cell.getLoader().unload(cell);
+            }
+        }
+
+        cell.future = null;
+        cell.root = null;
+        cell.uploads = null;
+        cell.failures = 0;
+        cell.state = StreamingCell.State.Unloaded;
+    }
+
+    //GPU resources are parented to the Scene and would otherwise live as long as it does. The whole cell is freed together,
+    //behind a single wait for the device
+    private static void release(Actor root) {
+        List<Disposable> resources = new ArrayList<>();
+        root.previsitAllActors(actor -> {
+            SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
+            if(spotlightComponent != null) spotlightComponent.addResources(resources);
+
+            MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
+            if(meshComponent != null) meshComponent.addResources(resources);
+        });
+        if(!resources.isEmpty()) Disposable.disposeTogether(resources);
+    }
+
+    public void close() {
+        for(StreamingCell cell : cells) {
+            unload(cell);
+        }
+        if(ownsExecutor) executor.shutdownNow();
+    }
+}
@@ -3,6 +3,8 @@ package engine.ecs;
 
 public abstract class Script {
     public boolean initialized;
+    final boolean parallel = getClass().isAnnotationPresent(ParallelScript.class);
+
     public abstract void init(Actor actor);
     public abstract void update(Actor actor, Actor root);
 
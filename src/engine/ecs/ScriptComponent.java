@@ -1,5 +1,5 @@
 package engine.ecs;
 
-@ComponentArray(mask = 1 << 5)
+@ComponentArray
 public record ScriptComponent(Script script) {
 }
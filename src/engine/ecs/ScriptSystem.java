@@ -1,10 +1,15 @@
 package engine.ecs;
 
+import engine.JobSystem;
 import engine.SystemState;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class ScriptSystem extends ActorSystem {
+    //Scripts are usually heavy compared to a column read, so batches stay small to spread crowds across every worker
+    private static final int BATCH_SIZE = 16;
+
     private Scene scene;
 
     public ScriptSystem(Scene scene) {
@@ -14,20 +19,48 @@ public class ScriptSystem extends ActorSystem {
     @Override
     public void run(Actor root) {
         if(SystemState.running) {
-            root.previsitAllActors(actor -> {
-                if (actor.has(ScriptComponent.class)) {
-                    ScriptComponent scriptComponent = actor.getComponent(ScriptComponent.class);
-                    if (!scriptComponent.script().initialized) {
-                        scriptComponent.script().init(actor);
-                    }
-
-                    scriptComponent.script().update(actor, root);
-
+            runScripts(scene.query(ScriptComponent.class), (script, actor) -> {
+                if (!script.initialized) {
+                    script.init(actor);
                 }
+
+                script.update(actor, root);
             });
         }
     }
 
+    //Unmarked scripts may touch any Actor, so they all run first on the calling thread. They may also make structural
+    //changes, which move rows around, so they are visited through Query.forEach.
+    //Scripts marked with @ParallelScript then run in batches on the JobSystem, this returns once they are all done
+    static void runScripts(Query scripts, BiConsumer<Script, Actor> action) {
+        scripts.forEach(actor -> {
+            Script script = actor.getComponent(ScriptComponent.class).script();
+            if(!script.parallel) action.accept(script, actor);
+        });
+
+        if(!hasParallel(scripts)) return;
+
+        JobSystem.parallelFor(scripts, BATCH_SIZE, (archetype, start, end) -> {
+            Object[] column = archetype.getColumn(ScriptComponent.class);
+            for (int row = start; row < end; row++) {
+                Script script = ((ScriptComponent) column[row]).script();
+                if(script.parallel) action.accept(script, archetype.getActor(row));
+            }
+        }).join();
+    }
+
+    private static boolean hasParallel(Query scripts) {
+        List<Archetype> archetypes = scripts.getArchetypes();
+        for (int i = 0; i < archetypes.size(); i++) {
+            Archetype archetype = archetypes.get(i);
+            Object[] column = archetype.getColumn(ScriptComponent.class);
+            for (int row = 0; row < archetype.size(); row++) {
+                if(((ScriptComponent) column[row]).script().parallel) return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void dispose() {
 
@@ -2,6 +2,6 @@ package engine.ecs;
 
 import engine.graphics.ShaderProgram;
 
-@ComponentArray(mask = 1 << 6)
+@ComponentArray
 public record ShaderComponent(ShaderProgram shaderProgram) {
 }
@@ -0,0 +1,277 @@
+package engine.ecs;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Keeps a DynamicAabbTree in sync with every Actor that has a TransformComponent and a BoundsComponent.
+//Only Actors whose transform or bounds changed since the last run are refit. Queries are answered against the
+//tree's fat AABBs first and then the tight world bounds, systems that query should declare reads(BoundsComponent.class)
+public final class SpatialSystem extends ActorSystem {
+    private final Scene scene;
+    private final DynamicAabbTree tree;
+    private Query query;
+    private long structuralVersion = -1;
+
+    public SpatialSystem(Scene scene, float margin) {
+        this.scene = scene;
+        this.tree = new DynamicAabbTree(margin);
+
+        //World transforms are brought up to date before refitting, like the RenderSystem does
+        writes(TransformComponent.class, BoundsComponent.class);
+    }
+
+    public SpatialSystem(Scene scene) {
+        this(scene, 0.1f);
+    }
+
+    public DynamicAabbTree getTree() {
+        return tree;
+    }
+
+    @Override
+    public void run(Actor root) {
+        scene.updateTransforms();
+
+        ArchetypeStorage storage = scene.getStorage();
+        if(query == null) query = storage.query(TransformComponent.class, BoundsComponent.class);
+
+        //Proxies can only go stale when Actors are destroyed, lose a component or leave the Scene
+        if(storage.getStructuralVersion() != structuralVersion) {
+            structuralVersion = storage.getStructuralVersion();
+            removeStale(storage);
+        }
+
+        query.forEachChanged(getLastRunVersion(), this::refit, TransformComponent.class, BoundsComponent.class);
+    }
+
+    private void removeStale(ArchetypeStorage storage) {
+        for (int proxy = 0; proxy < tree.getCapacity(); proxy++) {
+            if(!(tree.getUserData(proxy) instanceof BoundsComponent bounds)) continue;
+
+            Actor actor = bounds.actor;
+            boolean live = actor.getStorage() == storage &&
+                    actor.getComponent(BoundsComponent.class) == bounds &&
+                    actor.has(TransformComponent.class);
+
+            if(!live) {
+                tree.destroyProxy(proxy);
+                bounds.proxy = DynamicAabbTree.NULL;
+                bounds.actor = null;
+            }
+        }
+    }
+
+    private void refit(Actor actor) {
+        BoundsComponent bounds = actor.getComponent(BoundsComponent.class);
+        TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
+
+        transformComponent.world().transformAab(bounds.min, bounds.max, bounds.worldMin, bounds.worldMax);
+        Vector3fc min = bounds.worldMin, max = bounds.worldMax;
+
+        if(bounds.proxy == DynamicAabbTree.NULL) {
+            bounds.actor = actor;
+            bounds.proxy = tree.createProxy(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), bounds);
+        }
+        else {
+            tree.moveProxy(bounds.proxy, min.x(), min.y(), min.z(), max.x(), max.y(), max.z());
+        }
+    }
+
+    public void queryAabb(Vector3fc min, Vector3fc max, List<Actor> out) {
+        tree.queryAabb(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), proxy -> {
+            BoundsComponent bounds = (BoundsComponent) tree.getUserData(proxy);
+            if(overlaps(bounds, min.x(), min.y(), min.z(), max.x(), max.y(), max.z())) out.add(bounds.actor);
+            return true;
+        });
+    }
+
+    public void querySphere(Vector3fc center, float radius, List<Actor> out) {
+        querySphere(center.x(), center.y(), center.z(), radius, out::add);
+    }
+
+    private void querySphere(float x, float y, float z, float radius, ActorVisitor visitor) {
+        tree.querySphere(x, y, z, radius, proxy -> {
+            BoundsComponent bounds = (BoundsComponent) tree.getUserData(proxy);
+            if(distanceSquared(bounds, x, y, z) <= radius * radius) visitor.visit(bounds.actor);
+            return true;
+        });
+    }
+
+    //viewProj is the combined projection * view matrix, as used for cameras and spotlights
+    public void queryFrustum(Matrix4fc viewProj, List<Actor> out) {
+        queryFrustum(new FrustumIntersection(viewProj, false), out::add);
+    }
+
+    private void queryFrustum(FrustumIntersection frustum, ActorVisitor visitor) {
+        tree.queryFrustum(frustum, proxy -> {
+            BoundsComponent bounds = (BoundsComponent) tree.getUserData(proxy);
+            if(frustum.testAab(bounds.worldMin, bounds.worldMax)) visitor.visit(bounds.actor);
+            return true;
+        });
+    }
+
+    //Closest Actor hit within maxDistance along a normalized direction, or null
+    public Actor raycast(Vector3fc origin, Vector3fc direction, float maxDistance) {
+        RayHit hit = new RayHit();
+        raycast(origin.x(), origin.y(), origin.z(), direction.x(), direction.y(), direction.z(), maxDistance, hit);
+        return hit.actor;
+    }
+
+    private void raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, RayHit hit) {
+        hit.actor = null;
+        hit.distance = maxDistance;
+
+        float invX = dx == 0 ? 1e30f : 1f / dx, invY = dy == 0 ? 1e30f : 1f / dy, invZ = dz == 0 ? 1e30f : 1f / dz;
+        tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, (proxy, distance) -> {
+            BoundsComponent bounds = (BoundsComponent) tree.getUserData(proxy);
+            float t = rayDistance(bounds, ox, oy, oz, invX, invY, invZ, hit.distance);
+            if(t >= 0 && (hit.actor == null || t < hit.distance)) {
+                hit.actor = bounds.actor;
+                hit.distance = t;
+            }
+            return hit.distance;
+        });
+    }
+
+    //Batched queries write every query's hits into one Results, spheres are packed as (x, y, z, radius)
+    public void querySpheres(float[] spheres, int count, Results results) {
+        results.begin(count);
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            querySphere(spheres[o], spheres[o + 1], spheres[o + 2], spheres[o + 3], results::add);
+            results.end(i);
+        }
+    }
+
+    //Boxes are packed as (minX, minY, minZ, maxX, maxY, maxZ)
+    public void queryAabbs(float[] boxes, int count, Results results) {
+        results.begin(count);
+        for (int i = 0; i < count; i++) {
+            int o = i * 6;
+            float minX = boxes[o], minY = boxes[o + 1], minZ = boxes[o + 2];
+            float maxX = boxes[o + 3], maxY = boxes[o + 4], maxZ = boxes[o + 5];
+
+            tree.queryAabb(minX, minY, minZ, maxX, maxY, maxZ, proxy -> {
+                BoundsComponent bounds = (BoundsComponent) tree.getUserData(proxy);
+                if(overlaps(bounds, minX, minY, minZ, maxX, maxY, maxZ)) results.add(bounds.actor);
+                return true;
+            });
+            results.end(i);
+        }
+    }
+
+    public void queryFrustums(Matrix4fc[] viewProjs, Results results) {
+        FrustumIntersection frustum = new FrustumIntersection();
+
+        results.begin(viewProjs.length);
+        for (int i = 0; i < viewProjs.length; i++) {
+            queryFrustum(frustum.set(viewProjs[i], false), results::add);
+            results.end(i);
+        }
+    }
+
+    //Rays are packed as (originX, originY, originZ, directionX, directionY, directionZ, maxDistance).
+    //hits[i] is null when ray i hit nothing
+    public void raycasts(float[] rays, int count, Actor[] hits, float[] distances) {
+        RayHit hit = new RayHit();
+        for (int i = 0; i < count; i++) {
+            int o = i * 7;
+            raycast(rays[o], rays[o + 1], rays[o + 2], rays[o + 3], rays[o + 4], rays[o + 5], rays[o + 6], hit);
+            hits[i] = hit.actor;
+            distances[i] = hit.distance;
+        }
+    }
+
+    private static boolean overlaps(BoundsComponent bounds, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        Vector3fc min = bounds.worldMin, max = bounds.worldMax;
+        return min.x() <= maxX && max.x() >= minX &&
+                min.y() <= maxY && max.y() >= minY &&
+                min.z() <= maxZ && max.z() >= minZ;
+    }
+
+    private static float distanceSquared(BoundsComponent bounds, float x, float y, float z) {
+        Vector3fc min = bounds.worldMin, max = bounds.worldMax;
+        float dx = Math.max(Math.max(min.x() - x, 0f), x - max.x());
+        float dy = Math.max(Math.max(min.y() - y, 0f), y - max.y());
+        float dz = Math.max(Math.max(min.z() - z, 0f), z - max.z());
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static float rayDistance(BoundsComponent bounds, float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+        Vector3fc min = bounds.worldMin, max = bounds.worldMax;
+
+        float t1 = (min.x() - ox) * invX, t2 = (max.x() - ox) * invX;
+        float near = Math.min(t1, t2), far = Math.max(t1, t2);
+
+        t1 = (min.y() - oy) * invY;
+        t2 = (max.y() - oy) * invY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        t1 = (min.z() - oz) * invZ;
+        t2 = (max.z() - oz) * invZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        near = Math.max(near, 0f);
+        if(near > far || near > maxDistance) return -1;
+        return near;
+    }
+
+    private static class RayHit {
+        private Actor actor;
+        private float distance;
+    }
+
+    //Flat hit list for a batch of queries, the hits of query i are get(getStart(i)) up to get(getEnd(i) - 1)
+    public static class Results {
+        private Actor[] actors = new Actor[64];
+        private int[] ends = new int[8];
+        private int queryCount, size;
+
+        private void begin(int queryCount) {
+            Arrays.fill(actors, 0, size, null);
+            if(ends.length < queryCount) ends = new int[queryCount];
+            this.queryCount = queryCount;
+            this.size = 0;
+        }
+
+        private void add(Actor actor) {
+            if(size == actors.length) actors = Arrays.copyOf(actors, size * 2);
+            actors[size++] = actor;
+        }
+
+        private void end(int query) {
+            ends[query] = size;
+        }
+
+        public int getQueryCount() {
+            return queryCount;
+        }
+
+        public int getStart(int query) {
+            return query == 0 ? 0 : ends[query - 1];
+        }
+
+        public int getEnd(int query) {
+            return ends[query];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Actor get(int index) {
+            return actors[index];
+        }
+    }
+
+    @Override
+    public void dispose() {
+
+    }
+}
@@ -4,7 +4,9 @@ import engine.graphics.*;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
-@ComponentArray(mask = 1 << 3)
+import java.util.List;
+
+@ComponentArray
 public class SpotlightComponent {
     public Matrix4f view, proj;
     public Matrix4f invView, invProj;
@@ -56,5 +58,15 @@ public class SpotlightComponent {
         this.invView = new Matrix4f(view).invert();
     }
 
+    //Frees the shadow map, for spotlights that go away before their parent Disposable does
+    public void close() {
+        Disposable.disposeTogether(List.of(renderTarget));
+    }
+
+    //What close() frees, for freeing the resources of many components together
+    void addResources(List<Disposable> resources) {
+        resources.add(renderTarget);
+    }
+
 
 }
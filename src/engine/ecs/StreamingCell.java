@@ -0,0 +1,90 @@
+package engine.ecs;
+
+import engine.asset.AssetRegistry;
+import engine.mio.MioCompiler;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+//A piece of the world the SceneStreamer loads when the focus comes within loadRadius of its center and unloads
+//again past unloadRadius. unloadRadius should be larger so a cell doesn't thrash at its border
+public class StreamingCell {
+    enum State {
+        Unloaded,
+        Loading,
+        Uploading,
+        Attached,
+        Failed
+    }
+
+    private final String name;
+    private final Vector3f center;
+    private final float loadRadius, unloadRadius;
+    private final CellLoader loader;
+
+    //Only touched on the main thread, a load in flight hands its results over through the future
+    State state = State.Unloaded;
+    CompletableFuture<SceneStreamer.LoadedCell> future;
+    Actor root;
+    ArrayDeque<Runnable> uploads;
+    //Failed loads are retried once System.nanoTime() passes retryAt, waiting twice as long after each failure
+    int failures;
+    long retryAt;
+
+    public StreamingCell(String name, Vector3fc center, float loadRadius, float unloadRadius, CellLoader loader) {
+        this.name = name;
+        this.center = new Vector3f(center);
+        this.loadRadius = loadRadius;
+        this.unloadRadius = Math.max(loadRadius, unloadRadius);
+        this.loader = loader;
+    }
+
+    //Cell stored as a SceneSnapshot file
+    public static StreamingCell fromSnapshot(String name, Vector3fc center, float loadRadius, float unloadRadius, Path path) {
+        return new StreamingCell(name, center, loadRadius, unloadRadius, (scene, storage, mainThread) ->
+                SceneSnapshot.read(scene, storage, path, mainThread)
+        );
+    }
+
+    //Cell written in Mio, stored as an asset (e.g. "namespace:cells/forest.mio")
+    public static StreamingCell fromMio(String name, Vector3fc center, float loadRadius, float unloadRadius, String assetIdentifier) {
+        return new StreamingCell(name, center, loadRadius, unloadRadius, (scene, storage, mainThread) -> {
+            String source = AssetRegistry.<String>getAsset(assetIdentifier).getObject();
+            Actor cellRoot = storage.newActor(name);
+            scene.exec(MioCompiler.compile(source), storage, cellRoot, mainThread);
+            return cellRoot;
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Vector3fc getCenter() {
+        return center;
+    }
+
+    public float getLoadRadius() {
+        return loadRadius;
+    }
+
+    public float getUnloadRadius() {
+        return unloadRadius;
+    }
+
+    public CellLoader getLoader() {
+        return loader;
+    }
+
+    public boolean isAttached() {
+        return state == State.Attached;
+    }
+
+    //Root of the cell's Actors while it is attached
+    public Actor getRoot() {
+        return state == State.Attached ? root : null;
+    }
+}
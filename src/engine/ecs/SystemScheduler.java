@@ -0,0 +1,124 @@
+package engine.ecs;
+
+import engine.JobSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+//Runs ActorSystems as a dependency DAG. A system depends on every earlier system it conflicts with,
+//systems without conflicts run concurrently on the pool and main thread systems run inline on the calling thread
+public class SystemScheduler {
+    private ExecutorService executor;
+    private List<ActorSystem> systems = new ArrayList<>();
+    private int[][] dependencies;
+    private boolean serial;
+
+    public SystemScheduler(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    //Shares the JobSystem pool so jobs spawned by systems don't compete with a second set of threads
+    public SystemScheduler() {
+        this(JobSystem.getPool());
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setSystems(List<ActorSystem> systems) {
+        this.systems = new ArrayList<>(systems);
+        this.dependencies = null;
+    }
+
+    private void buildGraph() {
+        dependencies = new int[systems.size()][];
+        serial = true;
+
+        for (int j = 0; j < systems.size(); j++) {
+            ActorSystem system = systems.get(j);
+            if(!system.isMainThread()) serial = false;
+
+            List<Integer> deps = new ArrayList<>();
+            for (int i = 0; i < j; i++) {
+                if(system.conflictsWith(systems.get(i))) deps.add(i);
+            }
+            dependencies[j] = deps.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public void run(Actor root) {
+        run(root, () -> {});
+    }
+
+    //syncPoint runs on the calling thread whenever no system is running: after every system when
+    //everything is serial, otherwise once the whole graph has finished
+    public void run(Actor root, Runnable syncPoint) {
+        if(dependencies == null) buildGraph();
+
+        //Nothing can run off the main thread, keep the old in-order behaviour without any futures
+        if(serial) {
+            for(ActorSystem system : systems) {
+                runSystem(system, root);
+                syncPoint.run();
+            }
+            return;
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[systems.size()];
+
+        for (int j = 0; j < systems.size(); j++) {
+            ActorSystem system = systems.get(j);
+
+            if(system.isMainThread()) {
+                futures[j] = new CompletableFuture<Void>();
+            }
+            else {
+                futures[j] = CompletableFuture
+                        .allOf(getDependencyFutures(futures, j))
+                        .thenRunAsync(() -> runSystem(system, root), executor);
+            }
+        }
+
+        try {
+            for (int j = 0; j < systems.size(); j++) {
+                ActorSystem system = systems.get(j);
+                if(!system.isMainThread()) continue;
+
+                CompletableFuture<?> future = futures[j];
+                try {
+                    CompletableFuture.allOf(getDependencyFutures(futures, j)).join();
+                    runSystem(system, root);
+                    future.complete(null);
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            CompletableFuture.allOf(futures).join();
+            syncPoint.run();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            if(e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    private static void runSystem(ActorSystem system, Actor root) {
+        system.beginRun(root.getStorage());
+        system.run(root);
+    }
+
+    private CompletableFuture<?>[] getDependencyFutures(CompletableFuture<?>[] futures, int system) {
+        int[] deps = dependencies[system];
+        CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[deps.length];
+        for (int i = 0; i < deps.length; i++) {
+            dependencyFutures[i] = futures[deps[i]];
+        }
+        return dependencyFutures;
+    }
+}
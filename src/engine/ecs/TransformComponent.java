@@ -1,11 +1,55 @@
 package engine.ecs;
 
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+
+@ComponentArray
+public class TransformComponent {
+    private final int transformIndex;
+    private final Matrix4f local;
+    private final Matrix4f world = new Matrix4f();
+    private Actor actor;
+
+    public TransformComponent(int transformIndex, Matrix4f transform) {
+        this.transformIndex = transformIndex;
+        this.local = transform;
+    }
 
-@ComponentArray(mask = 1 << 7)
-public record TransformComponent(int transformIndex, Matrix4f transform) {
     public TransformComponent(Matrix4f transform) {
         this(0, transform);
     }
 
+    public int transformIndex() {
+        return transformIndex;
+    }
+
+    //Mutable access to the local transform, the Actor's subtree is recomputed by the TransformSystem on the next update
+    public Matrix4f transform() {
+        markDirty();
+        if(actor != null) actor.markChanged(TransformComponent.class);
+        return local;
+    }
+
+    public Matrix4fc local() {
+        return local;
+    }
+
+    //Local transform combined with the world transform of the nearest ancestor that has a TransformComponent
+    public Matrix4fc world() {
+        return world;
+    }
+
+    public void markDirty() {
+        if(actor != null) actor.markTransformDirty();
+    }
+
+    void setActor(Actor actor) {
+        this.actor = actor;
+        markDirty();
+    }
+
+    void updateWorld(Matrix4fc parentWorld) {
+        if(parentWorld == null) world.set(local);
+        else parentWorld.mul(local, world);
+    }
 }
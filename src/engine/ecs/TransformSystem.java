@@ -0,0 +1,92 @@
+package engine.ecs;
+
+import org.joml.Matrix4fc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Recomputes world transforms for the subtrees queued since the last run. Actors that never change are never visited
+public final class TransformSystem extends ActorSystem {
+    private List<Actor> spare = new ArrayList<>();
+    private Actor[] actorStack = new Actor[64];
+    private Matrix4fc[] parentWorldStack = new Matrix4fc[64];
+    private int stackSize;
+
+    public TransformSystem() {
+        writes(TransformComponent.class);
+    }
+
+    @Override
+    public void run(Actor root) {
+        ArchetypeStorage storage = root.getStorage();
+        List<Actor> queued = storage.drainDirtyTransforms(spare);
+
+        for (int i = 0; i < queued.size(); i++) {
+            Actor actor = queued.get(i);
+
+            //Already handled as part of a dirty ancestor's subtree, or it left this Scene
+            if(!actor.isTransformDirty() || actor.getStorage() != storage) continue;
+
+            Actor top = actor;
+            for(Actor parent = actor.getParent(); parent != null; parent = parent.getParent()) {
+                if(parent.isTransformDirty()) top = parent;
+            }
+
+            propagate(top);
+        }
+
+        queued.clear();
+        spare = queued;
+    }
+
+    private void propagate(Actor top) {
+        Matrix4fc parentWorld = null;
+        for(Actor parent = top.getParent(); parent != null; parent = parent.getParent()) {
+            TransformComponent transformComponent = parent.getComponent(TransformComponent.class);
+            if(transformComponent != null) {
+                parentWorld = transformComponent.world();
+                break;
+            }
+        }
+
+        push(top, parentWorld);
+
+        while (stackSize > 0) {
+            stackSize--;
+            Actor actor = actorStack[stackSize];
+            Matrix4fc world = parentWorldStack[stackSize];
+            actorStack[stackSize] = null;
+            parentWorldStack[stackSize] = null;
+
+            actor.clearTransformDirty();
+
+            TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
+            if(transformComponent != null) {
+                transformComponent.updateWorld(world);
+                actor.markChanged(TransformComponent.class);
+                world = transformComponent.world();
+            }
+
+            for(Actor child = actor.getFirstChild(); child != null; child = child.getNextSibling()) {
+                push(child, world);
+            }
+        }
+    }
+
+    private void push(Actor actor, Matrix4fc parentWorld) {
+        if(stackSize == actorStack.length) {
+            actorStack = Arrays.copyOf(actorStack, stackSize * 2);
+            parentWorldStack = Arrays.copyOf(parentWorldStack, stackSize * 2);
+        }
+
+        actorStack[stackSize] = actor;
+        parentWorldStack[stackSize] = parentWorld;
+        stackSize++;
+    }
+
+    @Override
+    public void dispose() {
+
+    }
+}
@@ -6,7 +6,7 @@ import engine.graphics.Rect2D;
 
 import java.util.Optional;
 
-@ComponentArray(mask = 1 << 9)
+@ComponentArray
 public class UIComponent {
     public Widget widget;
     public Loop loop;
@@ -14,7 +14,7 @@ import org.joml.Matrix2f;
 import org.joml.Vector2f;
 import java.nio.ByteBuffer;
 
-public class UISystem extends ActorSystem {
+public final class UISystem extends ActorSystem {
 
     private Renderer renderer;
     private RenderPipeline renderPipeline;
@@ -278,6 +278,9 @@ public class UISystem extends ActorSystem {
             };
         }
         menuLoop.setGfxPlatform(gfxPlatform);
+
+        writes(UIComponent.class);
+        pinToMainThread();
     }
 
     @Override
@@ -312,35 +315,30 @@ public class UISystem extends ActorSystem {
 
 
         if(SystemState.running) {
-            root.previsitAllActors(actor -> {
-                if(actor.has(UIComponent.class)) {
-                    UIComponent uiComponent = actor.getComponent(UIComponent.class);
-                    if (!uiComponent.active) {
-
-                        uiComponent.loop = new Loop();
-                        uiComponent.loop.setWidget(uiComponent.widget);
-                        uiComponent.loop.setGfxPlatform(gfxPlatform);
+            scene.query(UIComponent.class).forEach(actor -> {
+                UIComponent uiComponent = actor.getComponent(UIComponent.class);
+                if (!uiComponent.active) {
 
-                        uiComponent.active = true;
-                    }
+                    uiComponent.loop = new Loop();
+                    uiComponent.loop.setWidget(uiComponent.widget);
+                    uiComponent.loop.setGfxPlatform(gfxPlatform);
 
-                    if (uiComponent.rect2D.isPresent()) {
-                        Rect2D rect2D = uiComponent.rect2D.get();
-                        uiComponent.loop.update(
-                                (int) rect2D.x,
-                                (int) rect2D.y,
-                                (int) rect2D.w,
-                                (int) rect2D.h
-                        );
-                    } else {
-                        uiComponent.loop.update(
-                                0, 0
-                        );
-                    }
+                    uiComponent.active = true;
                 }
 
-
-
+                if (uiComponent.rect2D.isPresent()) {
+                    Rect2D rect2D = uiComponent.rect2D.get();
+                    uiComponent.loop.update(
+                            (int) rect2D.x,
+                            (int) rect2D.y,
+                            (int) rect2D.w,
+                            (int) rect2D.h
+                    );
+                } else {
+                    uiComponent.loop.update(
+                            0, 0
+                    );
+                }
             });
 
         }
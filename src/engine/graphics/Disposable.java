@@ -3,6 +3,7 @@ package engine.graphics;
 import engine.Internal;
 import engine.Logger;
 import engine.SkyRuntimeException;
+import engine.graphics.vulkan.VulkanRuntime;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -44,9 +45,23 @@ public abstract class Disposable {
         disposeRecursive(this);
     }
 
+    //Disposes the trees of all of them and takes each out of its parent. The device is waited for once up front, instead of
+    //by every resource in them, so freeing many resources at a time costs a single stall
+    public static void disposeTogether(List<? extends Disposable> disposables) {
+        Runnable dispose = () -> {
+            for(Disposable disposable : disposables) {
+                disposable.disposeAll();
+                if(disposable.parent != null) disposable.parent.remove(disposable);
+            }
+        };
+
+        if(Renderer.getRenderAPI() == RenderAPI.Vulkan) VulkanRuntime.destroyIdle(dispose);
+        else dispose.run();
+    }
+
     public void disposeRecursive(Disposable disposable){
 
-        for(int i = disposable.children.size() - 1; i > 0; i--) {
+        for(int i = disposable.children.size() - 1; i >= 0; i--) {
             disposeRecursive(disposable.children.get(i));
         }
 
@@ -46,6 +46,8 @@ public class DeferredPipeline extends RenderPipeline {
     private Buffer[] displayPassCameraBuffers;
 
     private int lightCount = 0;
+    //Storage version each frame in flight's transform buffers were last written at, only transforms changed since then are uploaded
+    private long[] transformUploadVersions;
     private final int COMPUTE_THREAD_GROUP_SIZE = 32;
 
 
@@ -156,6 +158,7 @@ public class DeferredPipeline extends RenderPipeline {
             lightingPassShaderProgram.assemble();
 
             lightingPassSceneDescBuffers = new Buffer[renderer.getMaxFramesInFlight()];
+            transformUploadVersions = new long[renderer.getMaxFramesInFlight()];
             for (int i = 0; i < renderer.getMaxFramesInFlight(); i++) {
                 lightingPassSceneDescBuffers[i] = Buffer.newBuffer(
                         renderer,
@@ -351,30 +354,28 @@ public class DeferredPipeline extends RenderPipeline {
         camera.getInvProj().get(sceneDescData);
         sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
 
-        scene.getRootActor().previsitAllActors(actor -> {
-            if(actor.has(SpotlightComponent.class)) {
-                SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
+        scene.query(SpotlightComponent.class).forEach(actor -> {
+            SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
 
-                spotlightComponent.view.get(sceneDescData);
-                sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
+            spotlightComponent.view.get(sceneDescData);
+            sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
 
-                spotlightComponent.proj.get(sceneDescData);
-                sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
+            spotlightComponent.proj.get(sceneDescData);
+            sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
 
-                spotlightComponent.invView.get(sceneDescData);
-                sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
+            spotlightComponent.invView.get(sceneDescData);
+            sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
 
-                spotlightComponent.invProj.get(sceneDescData);
-                sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
+            spotlightComponent.invProj.get(sceneDescData);
+            sceneDescData.position(sceneDescData.position() + SizeUtil.MATRIX_SIZE_BYTES);
 
-                sceneDescData.putFloat(spotlightComponent.attenuationConstant);
-                sceneDescData.putFloat(spotlightComponent.attenuationLinear);
-                sceneDescData.putFloat(spotlightComponent.attenuationQuadratic);
-                sceneDescData.putFloat(-1);
-                spotlightComponent.color.get(sceneDescData);
-                sceneDescData.position(sceneDescData.position() + SizeUtil.VEC3_SIZE_BYTES);
-                sceneDescData.putFloat(spotlightComponent.shadowNormalOffsetBias);
-            }
+            sceneDescData.putFloat(spotlightComponent.attenuationConstant);
+            sceneDescData.putFloat(spotlightComponent.attenuationLinear);
+            sceneDescData.putFloat(spotlightComponent.attenuationQuadratic);
+            sceneDescData.putFloat(-1);
+            spotlightComponent.color.get(sceneDescData);
+            sceneDescData.position(sceneDescData.position() + SizeUtil.VEC3_SIZE_BYTES);
+            sceneDescData.putFloat(spotlightComponent.shadowNormalOffsetBias);
         });
 
 
@@ -405,11 +406,9 @@ public class DeferredPipeline extends RenderPipeline {
 
         }
 
-        scene.getRootActor().previsitAllActors(actor -> {
-            if(actor.has(CameraComponent.class)) {
-                CameraComponent cameraComponent = actor.getComponent(CameraComponent.class);
-                sceneCamera = cameraComponent.camera;
-            }
+        scene.query(CameraComponent.class).forEach(actor -> {
+            CameraComponent cameraComponent = actor.getComponent(CameraComponent.class);
+            sceneCamera = cameraComponent.camera;
         });
 
 
@@ -418,12 +417,8 @@ public class DeferredPipeline extends RenderPipeline {
         //ShadowMapGen and ShadowMap pass Dynamic Resource Dependencies
         {
 
-            lightCount = 0;
-
-            scene.getRootActor().previsitAllActors(actor -> {
-                if (actor.has(SpotlightComponent.class))
-                    lightCount++;
-            });
+            Query spotlights = scene.query(SpotlightComponent.class);
+            lightCount = spotlights.size();
 
 
 
@@ -432,30 +427,28 @@ public class DeferredPipeline extends RenderPipeline {
 
             final int[] lightIndex = {0};
 
-            scene.getRootActor().previsitAllActors(actor -> {
-                if (actor.has(SpotlightComponent.class)) {
-                    SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
-                    int i1 = renderer.getMaxFramesInFlight() * lightIndex[0];
-                    int i2 = renderer.getMaxFramesInFlight() * lightIndex[0] + 1;
+            spotlights.forEach(actor -> {
+                SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
+                int i1 = renderer.getMaxFramesInFlight() * lightIndex[0];
+                int i2 = renderer.getMaxFramesInFlight() * lightIndex[0] + 1;
 
-                    shadowMapTextures[i1] = spotlightComponent.renderTarget
-                            .getAttachment(RenderTargetAttachmentTypes.Depth)
-                            .getTextures()[0];
+                shadowMapTextures[i1] = spotlightComponent.renderTarget
+                        .getAttachment(RenderTargetAttachmentTypes.Depth)
+                        .getTextures()[0];
 
-                    shadowMapSamplers[i1] = spotlightComponent.renderTarget
-                            .getAttachment(RenderTargetAttachmentTypes.Depth)
-                            .getSamplers()[0];
+                shadowMapSamplers[i1] = spotlightComponent.renderTarget
+                        .getAttachment(RenderTargetAttachmentTypes.Depth)
+                        .getSamplers()[0];
 
-                    shadowMapTextures[i2] = spotlightComponent.renderTarget
-                            .getAttachment(RenderTargetAttachmentTypes.Depth)
-                            .getTextures()[1];
+                shadowMapTextures[i2] = spotlightComponent.renderTarget
+                        .getAttachment(RenderTargetAttachmentTypes.Depth)
+                        .getTextures()[1];
 
-                    shadowMapSamplers[i2] = spotlightComponent.renderTarget
-                            .getAttachment(RenderTargetAttachmentTypes.Depth)
-                            .getSamplers()[1];
+                shadowMapSamplers[i2] = spotlightComponent.renderTarget
+                        .getAttachment(RenderTargetAttachmentTypes.Depth)
+                        .getSamplers()[1];
 
-                    lightIndex[0]++;
-                }
+                lightIndex[0]++;
             });
 
 
@@ -473,42 +466,38 @@ public class DeferredPipeline extends RenderPipeline {
 
         //Update all in-memory scene desc/transform buffers before their descriptors are updated inside the passes
         {
+            //The scene desc is the same for every shader, build it once in the lighting pass buffer and copy it everywhere else
+            ByteBuffer sceneDescData = lightingPassSceneDescBuffers[renderer.getFrameIndex()].get();
+            updateSceneDesc(sceneDescData, sceneCamera, scene);
+            ByteBuffer sceneDesc = sceneDescData.duplicate().flip();
+
             //Update entity shaders
             {
-                scene.getRootActor().previsitAllActors(actor -> {
-                    if(actor.has(TransformComponent.class)) {
-                        TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
-
-                        if(actor.has(MeshListComponent.class)) {
-                            MeshListComponent meshListComponent = actor.getComponent(MeshListComponent.class);
-                            ByteBuffer transformsData = meshListComponent.transformsBuffers[renderer.getFrameIndex()].get();
-                            transformComponent.transform().get(transformComponent.transformIndex() * SizeUtil.MATRIX_SIZE_BYTES, transformsData);
-                            ByteBuffer sceneDescData = meshListComponent.sceneDescBuffers[renderer.getFrameIndex()].get();
-                            updateSceneDesc(sceneDescData, sceneCamera, scene);
-                        }
-                        if(actor.has(MeshComponent.class)) {
-                            MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
-                            ByteBuffer transformsData = meshComponent.transformsBuffers[renderer.getFrameIndex()].get();
-                            transformComponent.transform().get(0, transformsData);
-                            ByteBuffer sceneDescData = meshComponent.sceneDescBuffers[renderer.getFrameIndex()].get();
-                            updateSceneDesc(sceneDescData, sceneCamera, scene);
-                        }
-
-
-                    }
+                long sinceVersion = transformUploadVersions[renderer.getFrameIndex()];
+                transformUploadVersions[renderer.getFrameIndex()] = scene.getStorage().nextVersion();
+
+                scene.query(TransformComponent.class, MeshListComponent.class).forEachChanged(sinceVersion, actor -> {
+                    TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
+                    MeshListComponent meshListComponent = actor.getComponent(MeshListComponent.class);
+                    ByteBuffer transformsData = meshListComponent.transformsBuffers[renderer.getFrameIndex()].get();
+                    transformComponent.world().get(transformComponent.transformIndex() * SizeUtil.MATRIX_SIZE_BYTES, transformsData);
+                }, TransformComponent.class, MeshListComponent.class);
+                scene.query(TransformComponent.class, MeshComponent.class).forEachChanged(sinceVersion, actor -> {
+                    TransformComponent transformComponent = actor.getComponent(TransformComponent.class);
+                    MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
+                    ByteBuffer transformsData = meshComponent.transformsBuffers[renderer.getFrameIndex()].get();
+                    transformComponent.world().get(0, transformsData);
+                }, TransformComponent.class, MeshComponent.class);
+
+                scene.query(MeshListComponent.class).forEach(actor -> {
+                    MeshListComponent meshListComponent = actor.getComponent(MeshListComponent.class);
+                    meshListComponent.sceneDescBuffers[renderer.getFrameIndex()].get().clear().put(sceneDesc.duplicate());
+                });
+                scene.query(MeshComponent.class).forEach(actor -> {
+                    MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
+                    meshComponent.sceneDescBuffers[renderer.getFrameIndex()].get().clear().put(sceneDesc.duplicate());
                 });
-
-
-
-            }
-
-            //Update ShadowMapPass shaders
-            {
-                ByteBuffer sceneDescData = lightingPassSceneDescBuffers[renderer.getFrameIndex()].get();
-                updateSceneDesc(sceneDescData, sceneCamera, scene);
             }
-
-
         }
 
         shadowMapGenPassLightIndex = 0;
@@ -521,66 +510,62 @@ public class DeferredPipeline extends RenderPipeline {
                 {
                     int mode = 1;
 
-                    scene.getRootActor().previsitAllActors(actor -> {
-                        if(actor.has(SpotlightComponent.class)) {
-                            SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
+                    scene.query(SpotlightComponent.class).forEach(actor -> {
+                        SpotlightComponent spotlightComponent = actor.getComponent(SpotlightComponent.class);
 
 
 
-                            int width, height;
-                            {
-                                Texture texture = spotlightComponent.renderTarget.getAttachmentByIndex(0).getTextures()[0];
-                                width = texture.getWidth();
-                                height = texture.getHeight();
-                            }
+                        int width, height;
+                        {
+                            Texture texture = spotlightComponent.renderTarget.getAttachmentByIndex(0).getTextures()[0];
+                            width = texture.getWidth();
+                            height = texture.getHeight();
+                        }
 
 
-                            shadowMapGenPass.startRendering(spotlightComponent.renderTarget, 3, width, height, true, Color.BLACK);
-                            {
-                                shadowMapGenPass.setCullMode(CullMode.Front);
-
-
-                                scene.getRootActor().previsitAllActors(e -> {
-                                    if (e.has(MeshListComponent.class)) {
-                                        MeshListComponent meshListComponent = e.getComponent(MeshListComponent.class);
-                                        shadowMapGenPass.setDrawBuffers(
-                                                meshListComponent.vertexBuffer,
-                                                meshListComponent.indexBuffer
-                                        );
-                                        shadowMapGenPass.setShaderProgram(
-                                                meshListComponent.shaderProgram
-                                        );
-                                        try (MemoryStack stack = stackPush()) {
-                                            ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
-                                            pPushConstants.putInt(mode);
-                                            pPushConstants.putInt(shadowMapGenPassLightIndex);
-                                            shadowMapGenPass.setPushConstants(pPushConstants);
-                                        }
-                                        shadowMapGenPass.drawIndexed(meshListComponent.indexCount);
-                                    }
-                                    if (e.has(MeshComponent.class)) {
-                                        MeshComponent meshComponent = e.getComponent(MeshComponent.class);
-                                        shadowMapGenPass.setDrawBuffers(
-                                                meshComponent.vertexBuffer,
-                                                meshComponent.indexBuffer
-                                        );
-                                        shadowMapGenPass.setShaderProgram(
-                                                meshComponent.shaderProgram
-                                        );
-                                        try (MemoryStack stack = stackPush()) {
-                                            ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
-                                            pPushConstants.putInt(mode);
-                                            pPushConstants.putInt(shadowMapGenPassLightIndex);
-                                            shadowMapGenPass.setPushConstants(pPushConstants);
-                                        }
-                                        shadowMapGenPass.drawIndexed(meshComponent.indexCount);
-                                    }
-                                });
+                        shadowMapGenPass.startRendering(spotlightComponent.renderTarget, 3, width, height, true, Color.BLACK);
+                        {
+                            shadowMapGenPass.setCullMode(CullMode.Front);
+
+
+                            scene.query(MeshListComponent.class).forEach(e -> {
+                                MeshListComponent meshListComponent = e.getComponent(MeshListComponent.class);
+                                shadowMapGenPass.setDrawBuffers(
+                                        meshListComponent.vertexBuffer,
+                                        meshListComponent.indexBuffer
+                                );
+                                shadowMapGenPass.setShaderProgram(
+                                        meshListComponent.shaderProgram
+                                );
+                                try (MemoryStack stack = stackPush()) {
+                                    ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
+                                    pPushConstants.putInt(mode);
+                                    pPushConstants.putInt(shadowMapGenPassLightIndex);
+                                    shadowMapGenPass.setPushConstants(pPushConstants);
+                                }
+                                shadowMapGenPass.drawIndexed(meshListComponent.indexCount);
+                            });
+                            scene.query(MeshComponent.class).forEach(e -> {
+                                MeshComponent meshComponent = e.getComponent(MeshComponent.class);
+                                shadowMapGenPass.setDrawBuffers(
+                                        meshComponent.vertexBuffer,
+                                        meshComponent.indexBuffer
+                                );
+                                shadowMapGenPass.setShaderProgram(
+                                        meshComponent.shaderProgram
+                                );
+                                try (MemoryStack stack = stackPush()) {
+                                    ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
+                                    pPushConstants.putInt(mode);
+                                    pPushConstants.putInt(shadowMapGenPassLightIndex);
+                                    shadowMapGenPass.setPushConstants(pPushConstants);
+                                }
+                                shadowMapGenPass.drawIndexed(meshComponent.indexCount);
+                            });
 
-                            }
-                            shadowMapGenPass.endRendering();
-                            shadowMapGenPassLightIndex++;
                         }
+                        shadowMapGenPass.endRendering();
+                        shadowMapGenPassLightIndex++;
 
 
                     });
@@ -606,42 +591,40 @@ public class DeferredPipeline extends RenderPipeline {
                     scenePass.startRendering(scenePassRT, 0, renderer.getWidth(), renderer.getHeight(), true, Color.BLACK);
                     {
                         scenePass.setCullMode(CullMode.Back);
-                        scene.getRootActor().previsitAllActors(actor -> {
-                            if (actor.has(MeshListComponent.class)) {
-                                MeshListComponent meshListComponent = actor.getComponent(MeshListComponent.class);
+                        scene.query(MeshListComponent.class).forEach(actor -> {
+                            MeshListComponent meshListComponent = actor.getComponent(MeshListComponent.class);
 
-                                scenePass.setDrawBuffers(
-                                        meshListComponent.vertexBuffer,
-                                        meshListComponent.indexBuffer
-                                );
-                                scenePass.setShaderProgram(
-                                        meshListComponent.shaderProgram
-                                );
-                                try (MemoryStack stack = stackPush()) {
-                                    ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
-                                    pPushConstants.putInt(mode);
-                                    pPushConstants.putInt(-1);
-                                    scenePass.setPushConstants(pPushConstants);
-                                }
-                                scenePass.drawIndexed(meshListComponent.indexCount);
+                            scenePass.setDrawBuffers(
+                                    meshListComponent.vertexBuffer,
+                                    meshListComponent.indexBuffer
+                            );
+                            scenePass.setShaderProgram(
+                                    meshListComponent.shaderProgram
+                            );
+                            try (MemoryStack stack = stackPush()) {
+                                ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
+                                pPushConstants.putInt(mode);
+                                pPushConstants.putInt(-1);
+                                scenePass.setPushConstants(pPushConstants);
                             }
-                            if(actor.has(MeshComponent.class)) {
-                                MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
-                                scenePass.setDrawBuffers(
-                                        meshComponent.vertexBuffer,
-                                        meshComponent.indexBuffer
-                                );
-                                scenePass.setShaderProgram(
-                                        meshComponent.shaderProgram
-                                );
-                                try(MemoryStack stack = stackPush()) {
-                                    ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
-                                    pPushConstants.putInt(mode);
-                                    pPushConstants.putInt(-1);
-                                    scenePass.setPushConstants(pPushConstants);
-                                }
-                                scenePass.drawIndexed(meshComponent.indexCount);
+                            scenePass.drawIndexed(meshListComponent.indexCount);
+                        });
+                        scene.query(MeshComponent.class).forEach(actor -> {
+                            MeshComponent meshComponent = actor.getComponent(MeshComponent.class);
+                            scenePass.setDrawBuffers(
+                                    meshComponent.vertexBuffer,
+                                    meshComponent.indexBuffer
+                            );
+                            scenePass.setShaderProgram(
+                                    meshComponent.shaderProgram
+                            );
+                            try(MemoryStack stack = stackPush()) {
+                                ByteBuffer pPushConstants = stack.calloc(2 * Integer.BYTES);
+                                pPushConstants.putInt(mode);
+                                pPushConstants.putInt(-1);
+                                scenePass.setPushConstants(pPushConstants);
                             }
+                            scenePass.drawIndexed(meshComponent.indexCount);
 
                         });
 
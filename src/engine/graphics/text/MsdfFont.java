@@ -20,6 +20,12 @@ public class MsdfFont extends Disposable {
         sampler = Sampler.newSampler(texture, Texture.Filter.Linear, Texture.Filter.Linear, true);
     }
 
+    //Metrics only, no atlas texture. Enough for measuring text and laying out UI without a renderer
+    public MsdfFont(Disposable parent, MsdfJsonLoader.MsdfData msdfData) {
+        super(parent);
+        this.msdfData = msdfData;
+    }
+
     public int getTabWidth() {
         return tabWidth;
     }
@@ -192,7 +192,7 @@ public class VulkanBuffer extends Buffer {
 
 
         if(mapped) unmap();
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
         vmaDestroyBuffer(VulkanAllocator.getAllocator().getId(), handle, allocation);
     }
 
@@ -42,7 +42,7 @@ public class VulkanCommandPool extends Disposable {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(device);
+        VulkanRuntime.waitIdle(device);
         vkDestroyCommandPool(device, handle, null);
     }
 }
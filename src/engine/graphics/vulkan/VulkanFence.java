@@ -39,7 +39,7 @@ public class VulkanFence extends Fence {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(device);
+        VulkanRuntime.waitIdle(device);
         vkDestroyFence(device, handle, null);
     }
 }
@@ -286,6 +286,6 @@ public class VulkanGraphicsPass extends GraphicsPass {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
     }
 }
@@ -103,7 +103,7 @@ public class VulkanImage extends Disposable {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
         if(memory != MemoryUtil.NULL) {
             vmaDestroyImage(VulkanAllocator.getAllocator().getId(), handle, pAllocation.get(0));
             pAllocation.free();
@@ -55,7 +55,7 @@ public class VulkanImageView extends Disposable {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
         vkDestroyImageView(VulkanRuntime.getCurrentDevice(), handle, null);
     }
 
@@ -24,7 +24,7 @@ public class VulkanPipeline extends Disposable {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
         vkDestroyPipeline(VulkanRuntime.getCurrentDevice(), pipeline, null);
         vkDestroyPipelineLayout(VulkanRuntime.getCurrentDevice(), pipelineLayout, null);
     }
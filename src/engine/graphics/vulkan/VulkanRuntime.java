@@ -2,6 +2,8 @@ package engine.graphics.vulkan;
 
 import org.lwjgl.vulkan.*;
 
+import static org.lwjgl.vulkan.VK10.vkDeviceWaitIdle;
+
 public class VulkanRuntime {
 
     private static VkDevice currentDevice;
@@ -11,7 +13,26 @@ public class VulkanRuntime {
     private static VkQueue computeQueue;
     private static VkPhysicalDeviceProperties physicalDeviceProperties;
     private static int computeFamilyIndex;
+    //Set while destroyIdle() runs, see waitIdle()
+    private static boolean deviceIdle;
+
+    //Resources wait for the device before they are destroyed, unless destroyIdle() already waited for the batch they're in
+    public static void waitIdle(VkDevice device) {
+        if(!deviceIdle) vkDeviceWaitIdle(device);
+    }
 
+    //Waits for the device once and runs destroy, which may then dispose any number of resources without each of them
+    //waiting again. Nothing may be submitted while it runs
+    public static void destroyIdle(Runnable destroy) {
+        vkDeviceWaitIdle(currentDevice);
+        deviceIdle = true;
+        try {
+            destroy.run();
+        }
+        finally {
+            deviceIdle = false;
+        }
+    }
 
     public static VkDevice getCurrentDevice() {
         return currentDevice;
@@ -53,7 +53,7 @@ public class VulkanSampler extends Sampler {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
         vkDestroySampler(VulkanRuntime.getCurrentDevice(), handle, null);
     }
 
@@ -40,7 +40,7 @@ public class VulkanSemaphore extends Semaphore {
 
     @Override
     public void dispose() {
-        vkDeviceWaitIdle(device);
+        VulkanRuntime.waitIdle(device);
         vkDestroySemaphore(device, handle, null);
     }
 }
@@ -875,7 +875,7 @@ public class VulkanShaderProgram extends ShaderProgram {
     @Override
     public void dispose() {
 
-        vkDeviceWaitIdle(VulkanRuntime.getCurrentDevice());
+        VulkanRuntime.waitIdle(VulkanRuntime.getCurrentDevice());
 
         for(long shaderModuleHandle : shaderModuleHandles) {
             vkDestroyShaderModule(VulkanRuntime.getCurrentDevice(), shaderModuleHandle, null);
@@ -53,7 +53,6 @@ public class RDParser {
                         Opcode.PushActor,
                         new Object[]{ next.content.toString() }
                 ));
-                parseSpecific(analyzer);
                 break;
             }
             case EndKeyword: {
@@ -90,7 +89,6 @@ public class RDParser {
                                 Opcode.AddData,
                                 new Object[]{ token.content.toString() }
                         ));
-                        parseContinuous(analyzer);
                         break;
                     }
                     case BoolKeyword: {
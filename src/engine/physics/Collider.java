@@ -1,27 +1,246 @@
 package engine.physics;
 
 import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.BvhTriangleMeshShape;
 import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.collision.shapes.ConvexHullShape;
+import com.bulletphysics.collision.shapes.IndexedMesh;
+import com.bulletphysics.collision.shapes.ShapeHull;
 import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.collision.shapes.TriangleIndexVertexArray;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import engine.SkyRuntimeException;
+import engine.graphics.MeshData;
+import org.joml.Matrix4fc;
 
+import javax.vecmath.Matrix4f;
 import javax.vecmath.Vector3f;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
+//Colliders made from the same data share their CollisionShape through the ShapeCache, so a thousand identical crates
+//cost one shape, not a thousand
 public class Collider {
+    private static final byte BOX = 0, SPHERE = 1, MESH = 2, CONVEX_HULL = 3, COMPOUND = 4;
+
     private CollisionShape collisionShape;
+    private final long hash;
+    //null for unshared colliders, whose shape isn't in the cache
+    private final ShapeCache.Key key;
+    private final Supplier<CollisionShape> factory;
+
+    //What the collider was made from, so write() can store it and read() make it again
+    private final byte type;
+    private final float[] parameters;
+    private final MeshData meshData;
+    private final Collider[] children;
 
-    private Collider(CollisionShape collisionShape) {
+    private Collider(CollisionShape collisionShape, long hash, ShapeCache.Key key, Supplier<CollisionShape> factory, byte type, float[] parameters, MeshData meshData, Collider[] children) {
         this.collisionShape = collisionShape;
+        this.hash = hash;
+        this.key = key;
+        this.factory = factory;
+        this.type = type;
+        this.parameters = parameters;
+        this.meshData = meshData;
+        this.children = children;
     }
 
+    private static Collider cached(ShapeCache.Key key, Supplier<CollisionShape> factory, byte type, float[] parameters, MeshData meshData, Collider[] children) {
+        return new Collider(ShapeCache.get(key, factory), key.hash(), key, factory, type, parameters, meshData, children);
+    }
+
+    //The shape is shared by every Collider made from the same data and must not be modified (setMargin(),
+    //setLocalScaling()...), that would change all of their bodies. Modify the shape of an unshared() copy instead
     public CollisionShape getCollisionShape() {
         return collisionShape;
     }
 
+    //Whether the shared shape was modified anyway, bodies refuse to be made from such a collider
+    public boolean isShapeModified() {
+        return key != null && ShapeCache.isModified(key, collisionShape);
+    }
+
+    //Same collider with a shape of its own, which may be modified freely. Children of a compound stay shared
+    public Collider unshared() {
+        return new Collider(factory.get(), hash, null, factory, type, parameters, meshData, children);
+    }
+
     public static Collider newBoxCollider(float w, float h, float d) {
-        return new Collider(new BoxShape(new Vector3f(w / 2, h / 2, d / 2)));
+        long hash = ShapeCache.mix(ShapeCache.hash(ShapeCache.hash(ShapeCache.hash(0, w), h), d));
+        return cached(new ShapeCache.Key("Box", hash, 3), () -> new BoxShape(new Vector3f(w / 2, h / 2, d / 2)), BOX, new float[]{w, h, d}, null, null);
     }
 
     public static Collider newSphereCollider(float r) {
-        return new Collider(new SphereShape(r));
+        long hash = ShapeCache.mix(ShapeCache.hash(0, r));
+        return cached(new ShapeCache.Key("Sphere", hash, 1), () -> new SphereShape(r), SPHERE, new float[]{r}, null, null);
+    }
+
+    //Triangle mesh with its own BVH, for level geometry. jbullet can't simulate moving triangle meshes, bodies with one
+    //are always static
+    public static Collider newMeshCollider(MeshData meshData) {
+        List<Float> positions = getPositions(meshData);
+        List<Integer> indices = meshData.getIndices();
+        long hash = ShapeCache.hash(positions, indices);
+
+        return cached(new ShapeCache.Key("Mesh", hash, positions.size() + indices.size()), () -> {
+            int vertexCount = positions.size() / 3;
+            int triangleCount = indices.isEmpty() ? vertexCount / 3 : indices.size() / 3;
+
+            IndexedMesh mesh = new IndexedMesh();
+            mesh.numVertices = vertexCount;
+            mesh.vertexStride = 3 * Float.BYTES;
+            mesh.vertexBase = ByteBuffer.allocate(vertexCount * mesh.vertexStride);
+            for (int i = 0; i < vertexCount * 3; i++) mesh.vertexBase.putFloat(positions.get(i));
+
+            mesh.numTriangles = triangleCount;
+            mesh.triangleIndexStride = 3 * Integer.BYTES;
+            mesh.triangleIndexBase = ByteBuffer.allocate(triangleCount * mesh.triangleIndexStride);
+            for (int i = 0; i < triangleCount * 3; i++) mesh.triangleIndexBase.putInt(indices.isEmpty() ? i : indices.get(i));
+
+            TriangleIndexVertexArray vertexArray = new TriangleIndexVertexArray();
+            vertexArray.addIndexedMesh(mesh);
+            return new BvhTriangleMeshShape(vertexArray, true);
+        }, MESH, null, meshData, null);
+    }
+
+    //Convex hull around the mesh's positions, simplified to at most 42 vertices (one per direction jbullet's ShapeHull
+    //samples), which is plenty for collision and keeps the support function cheap
+    public static Collider newConvexHullCollider(MeshData meshData) {
+        List<Float> positions = getPositions(meshData);
+        long hash = ShapeCache.hash(positions, List.of());
+
+        return cached(new ShapeCache.Key("ConvexHull", hash, positions.size()), () -> {
+            ObjectArrayList<Vector3f> points = new ObjectArrayList<>(positions.size() / 3);
+            for (int i = 0; i + 2 < positions.size(); i += 3) points.add(new Vector3f(positions.get(i), positions.get(i + 1), positions.get(i + 2)));
+
+            //Without a margin the hull goes through the points themselves, the final shape adds its margin once
+            ConvexHullShape original = new ConvexHullShape(points);
+            original.setMargin(0);
+            ShapeHull hull = new ShapeHull(original);
+            if(!hull.buildHull(0)) return new ConvexHullShape(points);
+
+            ObjectArrayList<Vector3f> vertices = new ObjectArrayList<>(hull.numVertices());
+            for (int i = 0; i < hull.numVertices(); i++) vertices.add(new Vector3f(hull.getVertexPointer().getQuick(i)));
+            return new ConvexHullShape(vertices);
+        }, CONVEX_HULL, null, meshData, null);
+    }
+
+    private static List<Float> getPositions(MeshData meshData) {
+        List<Float> positions = meshData.getData().get("Positions");
+        if(positions == null) throw new SkyRuntimeException("Mesh and convex hull colliders need MeshData with Positions");
+        return positions;
+    }
+
+    //children[i] placed at transforms[i] relative to the body. Children may be any collider except triangle meshes
+    public static Collider newCompoundCollider(Collider[] children, Matrix4fc[] transforms) {
+        if(children.length != transforms.length) throw new IllegalArgumentException("Every child needs a transform");
+
+        float[] matrices = new float[children.length * 16];
+        for (int i = 0; i < children.length; i++) transforms[i].get(matrices, i * 16);
+        return newCompoundCollider(children.clone(), matrices);
+    }
+
+    private static Collider newCompoundCollider(Collider[] children, float[] matrices) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < children.length; i++) {
+            hash = ShapeCache.hash(hash, (int) children[i].hash);
+            hash = ShapeCache.hash(hash, (int) (children[i].hash >>> 32));
+            for (int j = 0; j < 16; j++) hash = ShapeCache.hash(hash, matrices[i * 16 + j]);
+        }
+        hash = ShapeCache.mix(hash);
+
+        return cached(new ShapeCache.Key("Compound", hash, children.length), () -> {
+            CompoundShape compoundShape = new CompoundShape();
+            float[] matrix = new float[16];
+            Matrix4f matrixVM = new Matrix4f();
+            for (int i = 0; i < children.length; i++) {
+                //JOML is column major, vecmath row major
+                System.arraycopy(matrices, i * 16, matrix, 0, 16);
+                matrixVM.set(matrix);
+                matrixVM.transpose();
+                compoundShape.addChildShape(new Transform(matrixVM), children[i].collisionShape);
+            }
+            return compoundShape;
+        }, COMPOUND, matrices, null, children);
+    }
+
+    //Bytes write() needs for this collider
+    public int sizeOf() {
+        return switch (type) {
+            case BOX, SPHERE -> 1 + parameters.length * Float.BYTES;
+            case MESH -> 1 + Integer.BYTES * 2 + getPositions(meshData).size() * Float.BYTES + meshData.getIndices().size() * Integer.BYTES;
+            case CONVEX_HULL -> 1 + Integer.BYTES + getPositions(meshData).size() * Float.BYTES;
+            default -> {
+                int size = 1 + Integer.BYTES + parameters.length * Float.BYTES;
+                for(Collider child : children) size += child.sizeOf();
+                yield size;
+            }
+        };
+    }
+
+    //Stores what the collider was made from. read() makes an equal collider from it, with the exact same shape
+    public void write(ByteBuffer buffer) {
+        buffer.put(type);
+        switch (type) {
+            case BOX, SPHERE -> {
+                for(float parameter : parameters) buffer.putFloat(parameter);
+            }
+            case MESH, CONVEX_HULL -> {
+                List<Float> positions = getPositions(meshData);
+                buffer.putInt(positions.size());
+                for (int i = 0; i < positions.size(); i++) buffer.putFloat(positions.get(i));
+                if(type == CONVEX_HULL) return;
+
+                List<Integer> indices = meshData.getIndices();
+                buffer.putInt(indices.size());
+                for (int i = 0; i < indices.size(); i++) buffer.putInt(indices.get(i));
+            }
+            default -> {
+                buffer.putInt(children.length);
+                for(Collider child : children) child.write(buffer);
+                for(float parameter : parameters) buffer.putFloat(parameter);
+            }
+        }
+    }
+
+    public static Collider read(ByteBuffer buffer) {
+        byte type = buffer.get();
+        return switch (type) {
+            case BOX -> newBoxCollider(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+            case SPHERE -> newSphereCollider(buffer.getFloat());
+            case MESH, CONVEX_HULL -> {
+                List<Float> positions = new ArrayList<>();
+                for (int i = buffer.getInt(); i > 0; i--) positions.add(buffer.getFloat());
+                List<Integer> indices = new ArrayList<>();
+                if(type == MESH) for (int i = buffer.getInt(); i > 0; i--) indices.add(buffer.getInt());
+
+                MeshData meshData = new MeshData(Map.of("Positions", positions), indices, positions.size() / 3);
+                yield type == MESH ? newMeshCollider(meshData) : newConvexHullCollider(meshData);
+            }
+            case COMPOUND -> {
+                Collider[] children = new Collider[buffer.getInt()];
+                for (int i = 0; i < children.length; i++) children[i] = read(buffer);
+                float[] matrices = new float[children.length * 16];
+                for (int i = 0; i < matrices.length; i++) matrices[i] = buffer.getFloat();
+                yield newCompoundCollider(children, matrices);
+            }
+            default -> throw new SkyRuntimeException("Unknown collider type " + type);
+        };
+    }
+
+    //Shapes currently shared through the cache
+    public static int getCachedShapeCount() {
+        return ShapeCache.size();
+    }
+
+    //Colliders made afterwards build new shapes, existing ones keep theirs
+    public static void clearShapeCache() {
+        ShapeCache.clear();
     }
 }
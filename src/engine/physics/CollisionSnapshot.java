@@ -0,0 +1,679 @@
+package engine.physics;
+
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.dispatch.CollisionWorld;
+import com.bulletphysics.collision.narrowphase.ConvexCast;
+import com.bulletphysics.collision.narrowphase.SubsimplexConvexCast;
+import com.bulletphysics.collision.narrowphase.VoronoiSimplexSolver;
+import com.bulletphysics.collision.shapes.BoxShape;
+import com.bulletphysics.collision.shapes.CollisionShape;
+import com.bulletphysics.collision.shapes.CompoundShape;
+import com.bulletphysics.collision.shapes.CompoundShapeChild;
+import com.bulletphysics.collision.shapes.ConvexShape;
+import com.bulletphysics.collision.shapes.IndexedMesh;
+import com.bulletphysics.collision.shapes.ScalarType;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.collision.shapes.TriangleIndexVertexArray;
+import com.bulletphysics.collision.shapes.TriangleMeshShape;
+import com.bulletphysics.collision.shapes.TriangleShape;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import engine.JobSystem;
+import engine.SkyRuntimeException;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+//Read only copy of the collision objects of a world (shape, transform and bounds, compound shapes flattened into their
+//children) with a bounding volume hierarchy over them. Queries never touch the world, and triangle meshes are tested
+//against copies of their triangles (jbullet walks a mesh through scratch state kept in the shape), so they can run on
+//any number of threads, even while the world is being stepped. The owner invalidates it when bodies move, it is rebuilt
+//from the source on the next query
+public class CollisionSnapshot {
+    private static final int LEAF_SIZE = 4;
+    //Batches smaller than this run on the calling thread
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int BATCH_SIZE = 32;
+
+    private CollisionObject[] objects = new CollisionObject[64];
+    private CollisionShape[] shapes = new CollisionShape[64];
+    //The copy of the shape's triangles for triangle meshes, null for everything else
+    private TriangleMesh[] meshes = new TriangleMesh[64];
+    private Transform[] transforms = new Transform[64];
+    //min xyz, max xyz per entry
+    private float[] bounds = new float[64 * 6];
+    private int count;
+
+    private final Tree tree = new Tree();
+    //Copies are made once per mesh and only touched while building
+    private final Map<TriangleMeshShape, TriangleMesh> meshCache = new WeakHashMap<>();
+
+    private Consumer<CollisionSnapshot> source;
+    private volatile boolean dirty = true;
+
+    private final Vector3f aabbMin = new Vector3f();
+    private final Vector3f aabbMax = new Vector3f();
+    private final Vector3f scaling = new Vector3f();
+    private final Transform worldTransform = new Transform();
+    private Transform[] compoundTransforms = new Transform[0];
+
+    private static final ThreadLocal<QueryContext> contexts = ThreadLocal.withInitial(QueryContext::new);
+
+    //Fills an empty snapshot through add() or addAll() whenever a query finds it invalidated
+    public void setSource(Consumer<CollisionSnapshot> source) {
+        this.source = source;
+        dirty = true;
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    public void add(CollisionObject object, Transform worldTransform) {
+        add(object, object.getCollisionShape(), worldTransform, 0);
+    }
+
+    public void addAll(CollisionWorld world) {
+        ObjectArrayList<CollisionObject> collisionObjects = world.getCollisionObjectArray();
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            CollisionObject collisionObject = collisionObjects.getQuick(i);
+            add(collisionObject, collisionObject.getWorldTransform(worldTransform));
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private void add(CollisionObject object, CollisionShape shape, Transform transform, int depth) {
+        //jbullet swaps the object's shape while it tests compound children, so queries only ever see the leaves
+        if(shape instanceof CompoundShape compoundShape) {
+            if(depth == compoundTransforms.length) {
+                compoundTransforms = Arrays.copyOf(compoundTransforms, depth + 1);
+                compoundTransforms[depth] = new Transform();
+            }
+
+            ObjectArrayList<CompoundShapeChild> children = compoundShape.getChildList();
+            for (int i = 0; i < children.size(); i++) {
+                CompoundShapeChild child = children.getQuick(i);
+                Transform childTransform = compoundTransforms[depth];
+                childTransform.mul(transform, child.transform);
+                add(object, child.childShape, childTransform, depth + 1);
+            }
+            return;
+        }
+
+        if(count == objects.length) {
+            int capacity = count * 2;
+            objects = Arrays.copyOf(objects, capacity);
+            shapes = Arrays.copyOf(shapes, capacity);
+            meshes = Arrays.copyOf(meshes, capacity);
+            transforms = Arrays.copyOf(transforms, capacity);
+            bounds = Arrays.copyOf(bounds, capacity * 6);
+        }
+
+        int i = count++;
+        objects[i] = object;
+        shapes[i] = shape;
+        meshes[i] = shape instanceof TriangleMeshShape meshShape ? getMesh(meshShape) : null;
+        if(transforms[i] == null) transforms[i] = new Transform();
+        transforms[i].set(transform);
+
+        shape.getAabb(transform, aabbMin, aabbMax);
+        bounds[i * 6] = aabbMin.x;
+        bounds[i * 6 + 1] = aabbMin.y;
+        bounds[i * 6 + 2] = aabbMin.z;
+        bounds[i * 6 + 3] = aabbMax.x;
+        bounds[i * 6 + 4] = aabbMax.y;
+        bounds[i * 6 + 5] = aabbMax.z;
+    }
+
+    private TriangleMesh getMesh(TriangleMeshShape meshShape) {
+        TriangleMesh mesh = meshCache.get(meshShape);
+        //Unshared shapes may be scaled after they were copied
+        if(mesh == null || !mesh.scaling.equals(meshShape.getLocalScaling(scaling))) {
+            mesh = new TriangleMesh(meshShape);
+            meshCache.put(meshShape, mesh);
+        }
+        return mesh;
+    }
+
+    private void ensureBuilt() {
+        if(!dirty) return;
+
+        synchronized (this) {
+            if(!dirty) return;
+
+            Arrays.fill(objects, 0, count, null);
+            Arrays.fill(shapes, 0, count, null);
+            Arrays.fill(meshes, 0, count, null);
+            count = 0;
+            if(source != null) source.accept(this);
+            tree.build(bounds, count);
+            dirty = false;
+        }
+    }
+
+    //Runs every request of the batch and fills in its results. Large batches are spread over the JobSystem
+    public void query(QueryBatch batch) {
+        ensureBuilt();
+
+        int size = batch.size();
+        if(size < PARALLEL_THRESHOLD) {
+            run(batch, 0, size);
+            return;
+        }
+        JobSystem.parallelFor(0, size, BATCH_SIZE, (start, end) -> run(batch, start, end)).join();
+    }
+
+    private void run(QueryBatch batch, int start, int end) {
+        QueryContext context = contexts.get();
+        for (int i = start; i < end; i++) cast(context, batch, i);
+    }
+
+    private void cast(QueryContext context, QueryBatch batch, int request) {
+        float fromX = batch.from[request * 3], fromY = batch.from[request * 3 + 1], fromZ = batch.from[request * 3 + 2];
+        float dirX = batch.to[request * 3] - fromX, dirY = batch.to[request * 3 + 1] - fromY, dirZ = batch.to[request * 3 + 2] - fromZ;
+        //No infinities, so a ray lying in a slab plane can't produce 0 * infinity
+        float invX = dirX == 0 ? 1e30f : 1 / dirX, invY = dirY == 0 ? 1e30f : 1 / dirY, invZ = dirZ == 0 ? 1e30f : 1 / dirZ;
+        ConvexShape shape = batch.shapes[request];
+        CollisionObject ignored = batch.ignored[request];
+
+        //A sweep is a ray through bounds grown by the swept shape's extent
+        float growX = 0, growY = 0, growZ = 0;
+        if(shape != null) {
+            shape.getAabb(context.identity, context.min, context.max);
+            growX = Math.max(-context.min.x, context.max.x);
+            growY = Math.max(-context.min.y, context.max.y);
+            growZ = Math.max(-context.min.z, context.max.z);
+            context.from.origin.set(fromX, fromY, fromZ);
+            context.to.origin.set(batch.to[request * 3], batch.to[request * 3 + 1], batch.to[request * 3 + 2]);
+        }
+
+        float closest = 1;
+        CollisionObject hit = null;
+        int[] stack = context.stack;
+        int top = 0;
+        if(tree.nodes > 0) stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            if(!overlaps(tree.nodeBounds, node * 6, growX, growY, growZ, fromX, fromY, fromZ, invX, invY, invZ, closest)) continue;
+
+            if(tree.nodeCount[node] == 0) {
+                if(top + 2 > stack.length) stack = context.stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = tree.nodeFirst[node] + 1;
+                stack[top++] = tree.nodeFirst[node];
+                continue;
+            }
+
+            for (int k = tree.nodeFirst[node]; k < tree.nodeFirst[node] + tree.nodeCount[node]; k++) {
+                int entry = tree.order[k];
+                if(objects[entry] == ignored) continue;
+                if(!overlaps(bounds, entry * 6, growX, growY, growZ, fromX, fromY, fromZ, invX, invY, invZ, closest)) continue;
+
+                float fraction = meshes[entry] != null ?
+                        meshTest(context, entry, shape, fromX, fromY, fromZ, dirX, dirY, dirZ, growX, growY, growZ, closest) :
+                        shape == null ?
+                        rayTest(context, entry, fromX, fromY, fromZ, dirX, dirY, dirZ, closest) :
+                        sweepTest(context, entry, shape, closest);
+                if(fraction < closest) {
+                    closest = fraction;
+                    hit = objects[entry];
+                    batch.normals[request * 3] = context.normal.x;
+                    batch.normals[request * 3 + 1] = context.normal.y;
+                    batch.normals[request * 3 + 2] = context.normal.z;
+                    if(shape != null) {
+                        batch.points[request * 3] = context.point.x;
+                        batch.points[request * 3 + 1] = context.point.y;
+                        batch.points[request * 3 + 2] = context.point.z;
+                    }
+                }
+            }
+        }
+
+        batch.hits[request] = hit != null;
+        batch.objects[request] = hit;
+        batch.fractions[request] = hit != null ? closest : 1;
+        if(shape == null) {
+            batch.points[request * 3] = fromX + dirX * closest;
+            batch.points[request * 3 + 1] = fromY + dirY * closest;
+            batch.points[request * 3 + 2] = fromZ + dirZ * closest;
+        }
+        if(hit == null) {
+            batch.normals[request * 3] = 0;
+            batch.normals[request * 3 + 1] = 0;
+            batch.normals[request * 3 + 2] = 0;
+        }
+    }
+
+    //Slab test of the ray against bounds at offset, grown by the given extent, up to fraction closest
+    private static boolean overlaps(float[] bounds, int offset, float growX, float growY, float growZ, float fromX, float fromY, float fromZ,
+                                    float invX, float invY, float invZ, float closest) {
+        float t1 = (bounds[offset] - growX - fromX) * invX, t2 = (bounds[offset + 3] + growX - fromX) * invX;
+        float near = Math.min(t1, t2), far = Math.max(t1, t2);
+        t1 = (bounds[offset + 1] - growY - fromY) * invY;
+        t2 = (bounds[offset + 4] + growY - fromY) * invY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (bounds[offset + 2] - growZ - fromZ) * invZ;
+        t2 = (bounds[offset + 5] + growZ - fromZ) * invZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        return far >= Math.max(near, 0) && near < closest;
+    }
+
+    //Returns the fraction of the hit and leaves its normal in context.normal, or 1 without a hit closer than closest.
+    //Boxes and spheres are solved here without allocating, rays starting inside them don't hit them
+    private float rayTest(QueryContext context, int entry, float fromX, float fromY, float fromZ, float dirX, float dirY, float dirZ, float closest) {
+        CollisionShape shape = shapes[entry];
+        Transform transform = transforms[entry];
+
+        if(shape instanceof SphereShape sphereShape) {
+            float radius = sphereShape.getRadius();
+            float mX = fromX - transform.origin.x, mY = fromY - transform.origin.y, mZ = fromZ - transform.origin.z;
+            float a = dirX * dirX + dirY * dirY + dirZ * dirZ;
+            float b = mX * dirX + mY * dirY + mZ * dirZ;
+            float c = mX * mX + mY * mY + mZ * mZ - radius * radius;
+            float discriminant = b * b - a * c;
+            if(c <= 0 || discriminant < 0) return 1;
+
+            float t = (-b - (float) Math.sqrt(discriminant)) / a;
+            if(t < 0 || t >= closest) return 1;
+            context.normal.set((mX + dirX * t) / radius, (mY + dirY * t) / radius, (mZ + dirZ * t) / radius);
+            return t;
+        }
+
+        if(shape instanceof BoxShape boxShape) {
+            Vector3f halfExtents = boxShape.getHalfExtentsWithMargin(context.halfExtents);
+            Matrix3f basis = transform.basis;
+            //Into box space, the basis is a rotation so its transpose is its inverse
+            float mX = fromX - transform.origin.x, mY = fromY - transform.origin.y, mZ = fromZ - transform.origin.z;
+            float originX = basis.m00 * mX + basis.m10 * mY + basis.m20 * mZ;
+            float originY = basis.m01 * mX + basis.m11 * mY + basis.m21 * mZ;
+            float originZ = basis.m02 * mX + basis.m12 * mY + basis.m22 * mZ;
+            float localX = basis.m00 * dirX + basis.m10 * dirY + basis.m20 * dirZ;
+            float localY = basis.m01 * dirX + basis.m11 * dirY + basis.m21 * dirZ;
+            float localZ = basis.m02 * dirX + basis.m12 * dirY + basis.m22 * dirZ;
+
+            float near = -Float.MAX_VALUE, far = Float.MAX_VALUE;
+            int axis = -1;
+            for (int i = 0; i < 3; i++) {
+                float origin = i == 0 ? originX : i == 1 ? originY : originZ;
+                float direction = i == 0 ? localX : i == 1 ? localY : localZ;
+                float extent = i == 0 ? halfExtents.x : i == 1 ? halfExtents.y : halfExtents.z;
+
+                if(direction == 0) {
+                    if(origin < -extent || origin > extent) return 1;
+                    continue;
+                }
+                float t1 = (-extent - origin) / direction, t2 = (extent - origin) / direction;
+                if(t1 > t2) {
+                    float swap = t1;
+                    t1 = t2;
+                    t2 = swap;
+                }
+                if(t1 > near) {
+                    near = t1;
+                    axis = i;
+                }
+                far = Math.min(far, t2);
+            }
+            if(axis == -1 || near > far || near < 0 || near >= closest) return 1;
+
+            //The face entered faces against the ray, its normal is that column of the basis
+            float direction = axis == 0 ? localX : axis == 1 ? localY : localZ;
+            float sign = direction > 0 ? -1 : 1;
+            context.normal.set(basis.getElement(0, axis) * sign, basis.getElement(1, axis) * sign, basis.getElement(2, axis) * sign);
+            return near;
+        }
+
+        //Any other shape goes through jbullet, which allocates its casters on every call and only reads the shape
+        context.from.origin.set(fromX, fromY, fromZ);
+        context.to.origin.set(fromX + dirX, fromY + dirY, fromZ + dirZ);
+        RayCallback callback = context.rayCallback;
+        callback.reset(transform, closest);
+        CollisionWorld.rayTestSingle(context.from, context.to, objects[entry], shape, transform, callback);
+        if(!callback.hit) return 1;
+
+        context.normal.set(callback.normal);
+        return callback.closestHitFraction;
+    }
+
+    //rayTest and sweepTest against the copy of a triangle mesh. Both faces of a triangle are hit, the ray's normal faces
+    //against it. The sweep is jbullet's convex cast, per triangle like jbullet itself does it, but with the context's
+    //triangle and caster instead of the shape's
+    private float meshTest(QueryContext context, int entry, ConvexShape shape, float fromX, float fromY, float fromZ, float dirX, float dirY, float dirZ,
+                           float growX, float growY, float growZ, float closest) {
+        TriangleMesh mesh = meshes[entry];
+        Transform transform = transforms[entry];
+        Matrix3f basis = transform.basis;
+        //Into the mesh's space like the box in rayTest
+        float mX = fromX - transform.origin.x, mY = fromY - transform.origin.y, mZ = fromZ - transform.origin.z;
+        float originX = basis.m00 * mX + basis.m10 * mY + basis.m20 * mZ;
+        float originY = basis.m01 * mX + basis.m11 * mY + basis.m21 * mZ;
+        float originZ = basis.m02 * mX + basis.m12 * mY + basis.m22 * mZ;
+        float localX = basis.m00 * dirX + basis.m10 * dirY + basis.m20 * dirZ;
+        float localY = basis.m01 * dirX + basis.m11 * dirY + basis.m21 * dirZ;
+        float localZ = basis.m02 * dirX + basis.m12 * dirY + basis.m22 * dirZ;
+        float invX = localX == 0 ? 1e30f : 1 / localX, invY = localY == 0 ? 1e30f : 1 / localY, invZ = localZ == 0 ? 1e30f : 1 / localZ;
+        //The swept shape's bounds are axis aligned in world space, in any other space it fits in the sphere around them
+        float grow = shape == null ? 0 : (float) Math.sqrt(growX * growX + growY * growY + growZ * growZ) + mesh.margin;
+
+        Tree meshTree = mesh.tree;
+        float[] triangles = mesh.triangles;
+        boolean found = false;
+        int[] stack = context.meshStack;
+        int top = 0;
+        if(meshTree.nodes > 0) stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            if(!overlaps(meshTree.nodeBounds, node * 6, grow, grow, grow, originX, originY, originZ, invX, invY, invZ, closest)) continue;
+
+            if(meshTree.nodeCount[node] == 0) {
+                if(top + 2 > stack.length) stack = context.meshStack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = meshTree.nodeFirst[node] + 1;
+                stack[top++] = meshTree.nodeFirst[node];
+                continue;
+            }
+
+            for (int k = meshTree.nodeFirst[node]; k < meshTree.nodeFirst[node] + meshTree.nodeCount[node]; k++) {
+                int t = meshTree.order[k] * 9;
+                float fraction = shape == null ?
+                        triangleRay(context, triangles, t, originX, originY, originZ, localX, localY, localZ, closest) :
+                        triangleSweep(context, mesh, t, shape, transform, closest);
+                if(fraction < closest) {
+                    closest = fraction;
+                    found = true;
+                }
+            }
+        }
+        if(!found) return 1;
+
+        //The sweep's normal is already in world space
+        if(shape == null) {
+            basis.transform(context.normal);
+            context.normal.normalize();
+        }
+        return closest;
+    }
+
+    //Moller-Trumbore in the mesh's space, leaves the normal unnormalized in context.normal
+    private static float triangleRay(QueryContext context, float[] triangles, int t, float fromX, float fromY, float fromZ, float dirX, float dirY, float dirZ, float closest) {
+        float e1X = triangles[t + 3] - triangles[t], e1Y = triangles[t + 4] - triangles[t + 1], e1Z = triangles[t + 5] - triangles[t + 2];
+        float e2X = triangles[t + 6] - triangles[t], e2Y = triangles[t + 7] - triangles[t + 1], e2Z = triangles[t + 8] - triangles[t + 2];
+        float pX = dirY * e2Z - dirZ * e2Y, pY = dirZ * e2X - dirX * e2Z, pZ = dirX * e2Y - dirY * e2X;
+        float determinant = e1X * pX + e1Y * pY + e1Z * pZ;
+        //Parallel to the triangle, or degenerate
+        if(Math.abs(determinant) < 1e-12f) return 1;
+
+        float inverse = 1 / determinant;
+        float sX = fromX - triangles[t], sY = fromY - triangles[t + 1], sZ = fromZ - triangles[t + 2];
+        float u = (sX * pX + sY * pY + sZ * pZ) * inverse;
+        if(u < 0 || u > 1) return 1;
+        float qX = sY * e1Z - sZ * e1Y, qY = sZ * e1X - sX * e1Z, qZ = sX * e1Y - sY * e1X;
+        float v = (dirX * qX + dirY * qY + dirZ * qZ) * inverse;
+        if(v < 0 || u + v > 1) return 1;
+        float fraction = (e2X * qX + e2Y * qY + e2Z * qZ) * inverse;
+        if(fraction < 0 || fraction >= closest) return 1;
+
+        float nX = e1Y * e2Z - e1Z * e2Y, nY = e1Z * e2X - e1X * e2Z, nZ = e1X * e2Y - e1Y * e2X;
+        if(nX * dirX + nY * dirY + nZ * dirZ > 0) context.normal.set(-nX, -nY, -nZ);
+        else context.normal.set(nX, nY, nZ);
+        return fraction;
+    }
+
+    private static float triangleSweep(QueryContext context, TriangleMesh mesh, int t, ConvexShape shape, Transform transform, float closest) {
+        float[] triangles = mesh.triangles;
+        context.a.set(triangles[t], triangles[t + 1], triangles[t + 2]);
+        context.b.set(triangles[t + 3], triangles[t + 4], triangles[t + 5]);
+        context.c.set(triangles[t + 6], triangles[t + 7], triangles[t + 8]);
+        context.triangle.init(context.a, context.b, context.c);
+        context.triangle.setMargin(mesh.margin);
+
+        ConvexCast.CastResult result = context.castResult;
+        result.fraction = 1;
+        if(!context.getCaster(shape).calcTimeOfImpact(context.from, context.to, transform, transform, result)) return 1;
+        if(result.normal.lengthSquared() <= 1e-4f || result.fraction >= closest) return 1;
+
+        context.normal.normalize(result.normal);
+        context.point.set(result.hitPoint);
+        return result.fraction;
+    }
+
+    //jbullet's convex cast, returns the fraction and leaves normal and point in the context like rayTest
+    private float sweepTest(QueryContext context, int entry, ConvexShape shape, float closest) {
+        SweepCallback callback = context.sweepCallback;
+        callback.reset(transforms[entry], closest);
+        CollisionWorld.objectQuerySingle(shape, context.from, context.to, objects[entry], shapes[entry], transforms[entry], callback, 0);
+        if(!callback.hit) return 1;
+
+        context.normal.set(callback.normal);
+        context.point.set(callback.point);
+        return callback.closestHitFraction;
+    }
+
+    //Bounding volume hierarchy over boxes given as min xyz, max xyz. Leaves cover order[first, first + count), inner
+    //nodes have count 0 and their children at first and first + 1
+    private static final class Tree {
+        int[] order = new int[0];
+        float[] nodeBounds = new float[0];
+        int[] nodeFirst = new int[0];
+        int[] nodeCount = new int[0];
+        int nodes;
+
+        void build(float[] bounds, int count) {
+            if(order.length < count) order = new int[bounds.length / 6];
+            for (int i = 0; i < count; i++) order[i] = i;
+
+            if(nodeFirst.length < count * 2) {
+                nodeBounds = new float[count * 2 * 6];
+                nodeFirst = new int[count * 2];
+                nodeCount = new int[count * 2];
+            }
+            nodes = 0;
+            if(count > 0) buildNode(bounds, nodes++, 0, count);
+        }
+
+        //Splits at the middle of the longest axis of the entries' centers, or in half when that leaves a side empty
+        private void buildNode(float[] bounds, int node, int first, int n) {
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            float centerMinX = Float.MAX_VALUE, centerMinY = Float.MAX_VALUE, centerMinZ = Float.MAX_VALUE;
+            float centerMaxX = -Float.MAX_VALUE, centerMaxY = -Float.MAX_VALUE, centerMaxZ = -Float.MAX_VALUE;
+            for (int k = first; k < first + n; k++) {
+                int b = order[k] * 6;
+                minX = Math.min(minX, bounds[b]);
+                minY = Math.min(minY, bounds[b + 1]);
+                minZ = Math.min(minZ, bounds[b + 2]);
+                maxX = Math.max(maxX, bounds[b + 3]);
+                maxY = Math.max(maxY, bounds[b + 4]);
+                maxZ = Math.max(maxZ, bounds[b + 5]);
+
+                float x = bounds[b] + bounds[b + 3], y = bounds[b + 1] + bounds[b + 4], z = bounds[b + 2] + bounds[b + 5];
+                centerMinX = Math.min(centerMinX, x);
+                centerMinY = Math.min(centerMinY, y);
+                centerMinZ = Math.min(centerMinZ, z);
+                centerMaxX = Math.max(centerMaxX, x);
+                centerMaxY = Math.max(centerMaxY, y);
+                centerMaxZ = Math.max(centerMaxZ, z);
+            }
+
+            int o = node * 6;
+            nodeBounds[o] = minX;
+            nodeBounds[o + 1] = minY;
+            nodeBounds[o + 2] = minZ;
+            nodeBounds[o + 3] = maxX;
+            nodeBounds[o + 4] = maxY;
+            nodeBounds[o + 5] = maxZ;
+
+            if(n <= LEAF_SIZE) {
+                nodeFirst[node] = first;
+                nodeCount[node] = n;
+                return;
+            }
+
+            //Centers are kept doubled (min + max), the split value is too
+            float extentX = centerMaxX - centerMinX, extentY = centerMaxY - centerMinY, extentZ = centerMaxZ - centerMinZ;
+            int axis = extentX >= extentY && extentX >= extentZ ? 0 : extentY >= extentZ ? 1 : 2;
+            float split = axis == 0 ? (centerMinX + centerMaxX) / 2 : axis == 1 ? (centerMinY + centerMaxY) / 2 : (centerMinZ + centerMaxZ) / 2;
+
+            int middle = first;
+            for (int k = first; k < first + n; k++) {
+                int b = order[k] * 6 + axis;
+                if(bounds[b] + bounds[b + 3] < split) {
+                    int swap = order[k];
+                    order[k] = order[middle];
+                    order[middle++] = swap;
+                }
+            }
+            if(middle == first || middle == first + n) middle = first + n / 2;
+
+            int left = nodes;
+            nodes += 2;
+            nodeFirst[node] = left;
+            nodeCount[node] = 0;
+            buildNode(bounds, left, first, middle - first);
+            buildNode(bounds, left + 1, middle, first + n - middle);
+        }
+    }
+
+    //The triangles of a triangle mesh, 9 floats each, scaled and in the mesh's space, with a tree over them. Read
+    //straight from the mesh's buffers, without jbullet's shared locking state, and never written afterwards
+    private static final class TriangleMesh {
+        final Vector3f scaling = new Vector3f();
+        final float margin;
+        final float[] triangles;
+        final Tree tree = new Tree();
+
+        TriangleMesh(TriangleMeshShape shape) {
+            if(!(shape.getMeshInterface() instanceof TriangleIndexVertexArray vertexArray)) {
+                throw new SkyRuntimeException("Only triangle meshes made from a TriangleIndexVertexArray can be queried");
+            }
+            shape.getLocalScaling(scaling);
+            margin = shape.getMargin();
+
+            ObjectArrayList<IndexedMesh> parts = vertexArray.getIndexedMeshArray();
+            int count = 0;
+            for (int i = 0; i < parts.size(); i++) count += parts.getQuick(i).numTriangles;
+            triangles = new float[count * 9];
+            float[] bounds = new float[count * 6];
+
+            int t = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                IndexedMesh part = parts.getQuick(i);
+                //Absolute gets only, the buffers' positions belong to jbullet
+                for (int j = 0; j < part.numTriangles; j++, t++) {
+                    for (int k = 0; k < 3; k++) {
+                        int offset = j * part.triangleIndexStride;
+                        int index = part.indexType == ScalarType.SHORT ?
+                                part.triangleIndexBase.getShort(offset + k * Short.BYTES) & 0xFFFF :
+                                part.triangleIndexBase.getInt(offset + k * Integer.BYTES);
+                        int vertex = index * part.vertexStride;
+                        triangles[t * 9 + k * 3] = part.vertexBase.getFloat(vertex) * scaling.x;
+                        triangles[t * 9 + k * 3 + 1] = part.vertexBase.getFloat(vertex + Float.BYTES) * scaling.y;
+                        triangles[t * 9 + k * 3 + 2] = part.vertexBase.getFloat(vertex + Float.BYTES * 2) * scaling.z;
+                    }
+                    for (int axis = 0; axis < 3; axis++) {
+                        float a = triangles[t * 9 + axis], b = triangles[t * 9 + 3 + axis], c = triangles[t * 9 + 6 + axis];
+                        bounds[t * 6 + axis] = Math.min(a, Math.min(b, c));
+                        bounds[t * 6 + 3 + axis] = Math.max(a, Math.max(b, c));
+                    }
+                }
+            }
+            tree.build(bounds, count);
+        }
+    }
+
+    //Scratch space of one querying thread
+    private static final class QueryContext {
+        int[] stack = new int[64];
+        final Transform identity = new Transform();
+        final Transform from = new Transform();
+        final Transform to = new Transform();
+        final Vector3f min = new Vector3f();
+        final Vector3f max = new Vector3f();
+        final Vector3f halfExtents = new Vector3f();
+        final Vector3f normal = new Vector3f();
+        final Vector3f point = new Vector3f();
+        final RayCallback rayCallback = new RayCallback();
+        final SweepCallback sweepCallback = new SweepCallback();
+
+        int[] meshStack = new int[64];
+        final Vector3f a = new Vector3f();
+        final Vector3f b = new Vector3f();
+        final Vector3f c = new Vector3f();
+        final TriangleShape triangle = new TriangleShape();
+        final VoronoiSimplexSolver simplexSolver = new VoronoiSimplexSolver();
+        final ConvexCast.CastResult castResult = new ConvexCast.CastResult();
+        private ConvexShape castShape;
+        private SubsimplexConvexCast caster;
+
+        QueryContext() {
+            identity.setIdentity();
+            from.setIdentity();
+            to.setIdentity();
+        }
+
+        //The caster of the triangle against the swept shape, made again only when the shape changes
+        SubsimplexConvexCast getCaster(ConvexShape shape) {
+            if(shape != castShape) {
+                castShape = shape;
+                caster = new SubsimplexConvexCast(shape, triangle, simplexSolver);
+            }
+            return caster;
+        }
+    }
+
+    private static final class RayCallback extends CollisionWorld.RayResultCallback {
+        final Vector3f normal = new Vector3f();
+        Transform transform;
+        boolean hit;
+
+        void reset(Transform transform, float closest) {
+            this.transform = transform;
+            closestHitFraction = closest;
+            hit = false;
+        }
+
+        @Override
+        public float addSingleResult(CollisionWorld.LocalRayResult rayResult, boolean normalInWorldSpace) {
+            closestHitFraction = rayResult.hitFraction;
+            hit = true;
+            normal.set(rayResult.hitNormalLocal);
+            //Concave shapes report it in their own space, the snapshot's transform is the one that was tested
+            if(!normalInWorldSpace) transform.basis.transform(normal);
+            //and don't normalize it
+            normal.normalize();
+            return rayResult.hitFraction;
+        }
+    }
+
+    private static final class SweepCallback extends CollisionWorld.ConvexResultCallback {
+        final Vector3f normal = new Vector3f();
+        final Vector3f point = new Vector3f();
+        Transform transform;
+        boolean hit;
+
+        void reset(Transform transform, float closest) {
+            this.transform = transform;
+            closestHitFraction = closest;
+            hit = false;
+        }
+
+        @Override
+        public float addSingleResult(CollisionWorld.LocalConvexResult convexResult, boolean normalInWorldSpace) {
+            closestHitFraction = convexResult.hitFraction;
+            hit = true;
+            normal.set(convexResult.hitNormalLocal);
+            if(!normalInWorldSpace) transform.basis.transform(normal);
+            point.set(convexResult.hitPointLocal);
+            return convexResult.hitFraction;
+        }
+    }
+}
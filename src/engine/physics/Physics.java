@@ -5,6 +5,14 @@ import com.bulletphysics.dynamics.DynamicsWorld;
 
 public class Physics {
     public static DynamicsWorld world;
+    //Kept up to date by the BulletSystem. Queries may run on any number of threads, also while physics steps on a thread
+    //of its own, just not alongside BulletSystem.run() outside of its scripts
+    public static CollisionSnapshot snapshot;
+
+    //Runs a batch of rays and sweeps against the latest positions of everything in world
+    public static void query(QueryBatch batch) {
+        snapshot.query(batch);
+    }
 
     public static void activateEverything() {
         for(CollisionObject collisionObject : world.getCollisionObjectArray()) {
@@ -0,0 +1,177 @@
+package engine.physics;
+
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.collision.dispatch.CollisionConfiguration;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
+import com.bulletphysics.dynamics.constraintsolver.ContactSolverInfo;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.linearmath.TransformUtil;
+
+import javax.vecmath.Vector3f;
+
+//jbullet integrates and writes back the motion state of every body after each step, sleeping ones included.
+//Like later Bullet versions this only synchronizes bodies that are awake, which keeps idle scenes cheap.
+//It also times the phases of every step and counts what they worked on. Times and substeps add up from the creation
+//of the world, the body, pair and contact counts are those after the latest stepSimulation()
+public class PhysicsWorld extends DiscreteDynamicsWorld {
+    private long broadphaseNanos, narrowphaseNanos, solverNanos, syncNanos;
+    private long substeps, droppedSubsteps;
+    private int activeBodies, sleepingBodies, overlappingPairs, contactPoints;
+
+    private final Transform interpolatedTransform = new Transform();
+    private final Transform interpolationWorldTransform = new Transform();
+    private final Vector3f interpolationLinearVelocity = new Vector3f();
+    private final Vector3f interpolationAngularVelocity = new Vector3f();
+
+    public PhysicsWorld(Dispatcher dispatcher, BroadphaseInterface pairCache, ConstraintSolver constraintSolver, CollisionConfiguration collisionConfiguration) {
+        super(dispatcher, pairCache, constraintSolver, collisionConfiguration);
+    }
+
+    @Override
+    public int stepSimulation(float timeStep, int maxSubSteps, float fixedTimeStep) {
+        long taken = substeps;
+        int wanted = super.stepSimulation(timeStep, maxSubSteps, fixedTimeStep);
+        //More substeps than maxSubSteps were due, the rest of the time is lost
+        if(maxSubSteps != 0) droppedSubsteps += Math.max(0, wanted - (substeps - taken));
+
+        sample();
+        return wanted;
+    }
+
+    @Override
+    protected void internalSingleStepSimulation(float timeStep) {
+        substeps++;
+        super.internalSingleStepSimulation(timeStep);
+    }
+
+    //Same as the base version, minus BulletStats' profile scopes, so the broadphase and narrowphase can be timed apart
+    @Override
+    public void performDiscreteCollisionDetection() {
+        long start = System.nanoTime();
+        updateAabbs();
+        broadphasePairCache.calculateOverlappingPairs(dispatcher1);
+
+        long narrowphaseStart = System.nanoTime();
+        Dispatcher dispatcher = getDispatcher();
+        if(dispatcher != null) dispatcher.dispatchAllCollisionPairs(broadphasePairCache.getOverlappingPairCache(), dispatchInfo, dispatcher1);
+
+        long end = System.nanoTime();
+        broadphaseNanos += narrowphaseStart - start;
+        narrowphaseNanos += end - narrowphaseStart;
+    }
+
+    //Building the islands counts towards the solver, the islands are what it solves
+    @Override
+    protected void calculateSimulationIslands() {
+        long start = System.nanoTime();
+        super.calculateSimulationIslands();
+        solverNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    protected void solveConstraints(ContactSolverInfo solverInfo) {
+        long start = System.nanoTime();
+        super.solveConstraints(solverInfo);
+        solverNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    protected void synchronizeMotionStates() {
+        long start = System.nanoTime();
+        synchronizeAwakeMotionStates();
+        syncNanos += System.nanoTime() - start;
+    }
+
+    private void synchronizeAwakeMotionStates() {
+        //The base version also draws vehicles for the debug drawer
+        if(getDebugDrawer() != null) {
+            super.synchronizeMotionStates();
+            return;
+        }
+
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            CollisionObject collisionObject = collisionObjects.getQuick(i);
+            RigidBody body = RigidBody.upcast(collisionObject);
+            if(body == null || body.getMotionState() == null || body.isStaticOrKinematicObject() || !body.isActive()) continue;
+
+            TransformUtil.integrateTransform(
+                    body.getInterpolationWorldTransform(interpolationWorldTransform),
+                    body.getInterpolationLinearVelocity(interpolationLinearVelocity),
+                    body.getInterpolationAngularVelocity(interpolationAngularVelocity),
+                    localTime * body.getHitFraction(),
+                    interpolatedTransform
+            );
+            body.getMotionState().setWorldTransform(interpolatedTransform);
+        }
+    }
+
+    private void sample() {
+        activeBodies = 0;
+        sleepingBodies = 0;
+        for (int i = 0; i < collisionObjects.size(); i++) {
+            CollisionObject collisionObject = collisionObjects.getQuick(i);
+            if(collisionObject.isStaticOrKinematicObject()) continue;
+
+            if(collisionObject.isActive()) activeBodies++;
+            else sleepingBodies++;
+        }
+
+        overlappingPairs = broadphasePairCache.getOverlappingPairCache().getNumOverlappingPairs();
+
+        contactPoints = 0;
+        for (int i = 0; i < dispatcher1.getNumManifolds(); i++) {
+            PersistentManifold manifold = dispatcher1.getManifoldByIndexInternal(i);
+            contactPoints += manifold.getNumContacts();
+        }
+    }
+
+    //updateAabbs() and finding the overlapping pairs
+    public long getBroadphaseNanos() {
+        return broadphaseNanos;
+    }
+
+    //Contact generation for the overlapping pairs
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    public long getSolverNanos() {
+        return solverNanos;
+    }
+
+    //Writing transforms to the motion states
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    public long getSubsteps() {
+        return substeps;
+    }
+
+    //Substeps stepSimulation() skipped because more than maxSubSteps were due
+    public long getDroppedSubsteps() {
+        return droppedSubsteps;
+    }
+
+    //Dynamic bodies, static and kinematic ones are in neither count
+    public int getActiveBodies() {
+        return activeBodies;
+    }
+
+    public int getSleepingBodies() {
+        return sleepingBodies;
+    }
+
+    public int getOverlappingPairs() {
+        return overlappingPairs;
+    }
+
+    public int getContactPoints() {
+        return contactPoints;
+    }
+}
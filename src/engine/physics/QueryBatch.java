@@ -0,0 +1,121 @@
+package engine.physics;
+
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.shapes.ConvexShape;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+//Rays and convex sweeps that run against a CollisionSnapshot in one go (see Physics.query). Requests and results live in
+//flat arrays sized once, so a batch can be cleared, refilled and run every frame without allocating
+public class QueryBatch {
+    private int size;
+
+    final float[] from;
+    final float[] to;
+    //null for rays
+    final ConvexShape[] shapes;
+    final CollisionObject[] ignored;
+
+    final boolean[] hits;
+    final float[] fractions;
+    final float[] points;
+    final float[] normals;
+    final CollisionObject[] objects;
+
+    public QueryBatch(int capacity) {
+        from = new float[capacity * 3];
+        to = new float[capacity * 3];
+        shapes = new ConvexShape[capacity];
+        ignored = new CollisionObject[capacity];
+
+        hits = new boolean[capacity];
+        fractions = new float[capacity];
+        points = new float[capacity * 3];
+        normals = new float[capacity * 3];
+        objects = new CollisionObject[capacity];
+    }
+
+    //Returns the index of the request (and later its result), or -1 when the batch is full
+    public int addRay(float fromX, float fromY, float fromZ, float toX, float toY, float toZ) {
+        return add(null, fromX, fromY, fromZ, toX, toY, toZ);
+    }
+
+    public int addRay(Vector3fc from, Vector3fc to) {
+        return add(null, from.x(), from.y(), from.z(), to.x(), to.y(), to.z());
+    }
+
+    //Moves shape from one point to the other without rotating it
+    public int addSweep(ConvexShape shape, Vector3fc from, Vector3fc to) {
+        return add(shape, from.x(), from.y(), from.z(), to.x(), to.y(), to.z());
+    }
+
+    //Request index passes through object, e.g. the collider of the agent a line of sight check starts in
+    public void ignore(int index, CollisionObject object) {
+        ignored[index] = object;
+    }
+
+    private int add(ConvexShape shape, float fromX, float fromY, float fromZ, float toX, float toY, float toZ) {
+        if(size == shapes.length) return -1;
+
+        int index = size++;
+        from[index * 3] = fromX;
+        from[index * 3 + 1] = fromY;
+        from[index * 3 + 2] = fromZ;
+        to[index * 3] = toX;
+        to[index * 3 + 1] = toY;
+        to[index * 3 + 2] = toZ;
+        shapes[index] = shape;
+        ignored[index] = null;
+        return index;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            shapes[i] = null;
+            ignored[i] = null;
+            objects[i] = null;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return shapes.length;
+    }
+
+    public boolean hasHit(int index) {
+        return hits[index];
+    }
+
+    //0 at the start, 1 at the end of the ray or sweep
+    public float getFraction(int index) {
+        return fractions[index];
+    }
+
+    public float getDistance(int index) {
+        float x = to[index * 3] - from[index * 3];
+        float y = to[index * 3 + 1] - from[index * 3 + 1];
+        float z = to[index * 3 + 2] - from[index * 3 + 2];
+        return fractions[index] * (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public Vector3f getPoint(int index, Vector3f dest) {
+        return dest.set(points[index * 3], points[index * 3 + 1], points[index * 3 + 2]);
+    }
+
+    public Vector3f getNormal(int index, Vector3f dest) {
+        return dest.set(normals[index * 3], normals[index * 3 + 1], normals[index * 3 + 2]);
+    }
+
+    public CollisionObject getObject(int index) {
+        return objects[index];
+    }
+
+    //The Actor for bodies made by the BulletSystem
+    public Object getUserPointer(int index) {
+        return objects[index] == null ? null : objects[index].getUserPointer();
+    }
+}
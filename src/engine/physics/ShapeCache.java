@@ -0,0 +1,104 @@
+package engine.physics;
+
+import com.bulletphysics.collision.shapes.CollisionShape;
+
+import javax.vecmath.Vector3f;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+//Collision shapes by content, so every Collider made from the same data shares one shape (and one BVH or hull).
+//Shapes are never modified after they are built, which is what makes sharing them between bodies safe, isModified()
+//catches those that were. Entries are weak: once no Collider or body holds a shape anymore it is collected and its
+//entry dropped, so streamed in level geometry doesn't stay around after it was unloaded
+class ShapeCache {
+    record Key(String type, long hash, int size) {}
+
+    private static class ShapeReference extends WeakReference<CollisionShape> {
+        private final Key key;
+        //What the shape was built with
+        private final float margin;
+        private final Vector3f scaling;
+
+        private ShapeReference(Key key, CollisionShape shape, ReferenceQueue<CollisionShape> queue) {
+            super(shape, queue);
+            this.key = key;
+            this.margin = shape.getMargin();
+            this.scaling = shape.getLocalScaling(new Vector3f());
+        }
+    }
+
+    private static final Map<Key, ShapeReference> shapes = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<CollisionShape> collected = new ReferenceQueue<>();
+
+    private ShapeCache() {}
+
+    //Builds the shape at most once per key while it is in use, other threads asking for the same key meanwhile wait for it
+    static CollisionShape get(Key key, Supplier<CollisionShape> factory) {
+        expunge();
+
+        CollisionShape[] shape = new CollisionShape[1];
+        shapes.compute(key, (k, existing) -> {
+            shape[0] = existing == null ? null : existing.get();
+            if(shape[0] != null) return existing;
+
+            shape[0] = factory.get();
+            return new ShapeReference(k, shape[0], collected);
+        });
+        return shape[0];
+    }
+
+    //Whether the shared shape's margin or scaling was changed after it was built, which changes every body using it
+    static boolean isModified(Key key, CollisionShape shape) {
+        ShapeReference reference = shapes.get(key);
+        if(reference == null || reference.get() != shape) return false;
+
+        Vector3f scaling = shape.getLocalScaling(new Vector3f());
+        return shape.getMargin() != reference.margin || !scaling.equals(reference.scaling);
+    }
+
+    private static void expunge() {
+        ShapeReference reference;
+        while ((reference = (ShapeReference) collected.poll()) != null) {
+            shapes.remove(reference.key, reference);
+        }
+    }
+
+    static int size() {
+        expunge();
+        return shapes.size();
+    }
+
+    static void clear() {
+        shapes.clear();
+    }
+
+    //64 bit FNV-1a over the raw bits, followed by a final mix so similar meshes don't land on similar hashes
+    static long hash(long hash, float value) {
+        return hash(hash, Float.floatToIntBits(value));
+    }
+
+    static long hash(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    static long hash(List<Float> floats, List<Integer> ints) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < floats.size(); i++) hash = hash(hash, floats.get(i));
+        hash = hash(hash, -1);
+        for (int i = 0; i < ints.size(); i++) hash = hash(hash, ints.get(i));
+        return mix(hash);
+    }
+
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}